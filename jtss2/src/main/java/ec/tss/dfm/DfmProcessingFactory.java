@@ -39,6 +39,7 @@ import ec.tstoolkit.dfm.DfmEM;
 import ec.tstoolkit.dfm.DfmEM2;
 import ec.tstoolkit.dfm.DfmEstimator;
 import ec.tstoolkit.dfm.DfmModelSpec;
+import ec.tstoolkit.dfm.DfmMultiStartEstimator;
 import ec.tstoolkit.dfm.DfmSpec;
 import ec.tstoolkit.dfm.DynamicFactorModel;
 import ec.tstoolkit.dfm.EmSpec;
@@ -275,6 +276,7 @@ public class DfmProcessingFactory extends ProcessingHookProvider<IProcessingNode
                     dinfo = dinfo.extendTo(lastday);
                 }
                 DfmResults start = new DfmResults(spec.getModelSpec().build(), dinfo);
+                start.setMappedStorage(spec.getModelSpec().isMappedStorage());
                 start.setDescriptions(desc);
                 if (!spec.getModelSpec().isDefined()) {
                     new DefaultInitializer().initialize(start.getModel(), start.getInput());
@@ -407,6 +409,8 @@ public class DfmProcessingFactory extends ProcessingHookProvider<IProcessingNode
                 em.setMaxIter(spec.getMaxIter());
                 em.setCorrectingInitialVariance(end);
                 em.setEpsilon(spec.getPrecision());
+                em.setAccelerated(spec.isAccelerated());
+                em.setParallelism(spec.getParallelism());
                 initializer = em;
                 if (DfmProcessingFactory.this.hasHooks()) {
                     hook = new IProcessingHook<DfmEM2, DynamicFactorModel>() {
@@ -453,6 +457,7 @@ public class DfmProcessingFactory extends ProcessingHookProvider<IProcessingNode
         public String getPrefix() {
             return PROC;
         }
+        private static final String MULTISTART = "Multi-start estimation";
         IProcessingHook hook;
 
         @Override
@@ -516,13 +521,38 @@ public class DfmProcessingFactory extends ProcessingHookProvider<IProcessingNode
             estimator.setIndependentVarShocks(spec.isIndependentVarShocks());
             estimator.setUsingBlockIterations(spec.isBlockIterations());
             estimator.setPrecision(spec.getPrecision());
-            if (!estimator.estimate(rslts.getModel(), actualData)) {
+            estimator.setFilterEngine(spec.getFilterEngine());
+            estimator.setParallelism(spec.getParallelism());
+            estimator.setInformation(spec.getInformation());
+            if (spec.getStarts() > 1) {
+                DfmMultiStartEstimator mestimator = new DfmMultiStartEstimator(estimator);
+                mestimator.setStartsCount(spec.getStarts());
+                if (DfmProcessingFactory.this.hasHooks()) {
+                    // the other starts don't use the hooks of the minimizer:
+                    // the cancellation is forwarded at the end of their cycles
+                    final DynamicFactorModel model = rslts.getModel();
+                    mestimator.setCancelCriterion(new DfmEstimator.IAbandonCriterion() {
+
+                        @Override
+                        public boolean abandon(double ll) {
+                            EstimationInfo einfo = new EstimationInfo(model, ll);
+                            HookInformation<IProcessingNode, EstimationInfo> hinfo = new HookInformation<>((IProcessingNode) ProcNode.this, einfo);
+                            hinfo.message = MULTISTART;
+                            DfmProcessingFactory.this.processHooks(hinfo, true);
+                            return hinfo.cancel;
+                        }
+                    });
+                }
+                if (!mestimator.estimate(rslts.getModel(), actualData)) {
+                    return IProcessing.Status.Invalid;
+                }
+                estimator = mestimator.getBestEstimator();
+            } else if (!estimator.estimate(rslts.getModel(), actualData)) {
                 return IProcessing.Status.Invalid;
-            } else {
-                rslts.setScore(estimator.getGradient());
-                rslts.setObservedInformation(estimator.getHessian());
-                rslts.setLikelihood(estimator.geLikelihood());
             }
+            rslts.setScore(estimator.getGradient());
+            rslts.setObservedInformation(estimator.getHessian());
+            rslts.setLikelihood(estimator.geLikelihood());
             return IProcessing.Status.Valid;
         }
     };
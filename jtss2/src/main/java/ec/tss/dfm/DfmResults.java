@@ -72,6 +72,7 @@ public class DfmResults implements IProcResults {
     private TsData[] smoothedSignalUncertainty; // incorporates stdev
     private DfmSeriesDescriptor[] description;
     private TsData[] smoothedSignalProjection; // incorporates mean and stdev
+    private boolean mappedStorage; // variances of the states outside the heap
 
     private final List<ProcessingInformation> infos = new ArrayList<>();
 
@@ -256,6 +257,21 @@ public class DfmResults implements IProcResults {
         return new TsData(currentDomain.getStart(), filtering.getFilteredData().component(idx * model.getBlockLength()), true);
     }
 
+    public boolean isMappedStorage() {
+        return mappedStorage;
+    }
+
+    /**
+     * Keeps the variances of the filtered/smoothed states in memory-mapped
+     * temporary files (for long samples). Must be set before the smoothed
+     * states are computed
+     *
+     * @param mapped
+     */
+    public void setMappedStorage(boolean mapped) {
+        mappedStorage = mapped;
+    }
+
     public TsData getFactorStdev(int idx) {
         if (smoothing == null) {
             calcSmoothedStates();
@@ -267,6 +283,8 @@ public class DfmResults implements IProcResults {
     private void calcSmoothedStates() {
         DfmProcessor processor = new DfmProcessor();
         processor.setCalcVariance(true);
+        processor.setPackedStorage(true);
+        processor.setMappedStorage(mappedStorage);
         processor.process(model, input);
         smoothing = processor.getSmoothingResults();
         filtering = processor.getFilteringResults();
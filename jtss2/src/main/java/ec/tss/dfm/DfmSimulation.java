@@ -34,6 +34,10 @@ import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  *
@@ -43,6 +47,7 @@ import java.util.Map;
 public class DfmSimulation {
 
     private final Day horizon_;
+    private int parallelism_ = Runtime.getRuntime().availableProcessors();
     private Map<Day, SimulationResultsDocument> rslts_ = new HashMap<>(); // Results of the simulation process
     private final List<DfmSimulationResults> arimaResults;    // built results for arima
     private final List<DfmSimulationResults> dfmResults;  // built results for dfm
@@ -82,6 +87,30 @@ public class DfmSimulation {
         return watched;
     }
 
+    /**
+     * Maximum number of publication dates processed concurrently
+     *
+     * @return
+     */
+    public int getParallelism() {
+        return parallelism_;
+    }
+
+    /**
+     * Sets the maximum number of publication dates processed concurrently.
+     * The dates between two re-estimations of the model are independent
+     * and they can be processed in parallel. A value of 1 corresponds to a
+     * purely sequential processing.
+     *
+     * @param n
+     */
+    public void setParallelism(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("The parallelism should be positive");
+        }
+        parallelism_ = n;
+    }
+
     /**
      * Processes the simulation of the the given document
      *
@@ -101,55 +130,128 @@ public class DfmSimulation {
             watched.add(ms.isWatched());
         }
 
-        DfmDocument doc;
+        // re-estimations (in the order of the calendar)
+        boolean[] estimated = new boolean[ed.length];
         for (int i = 0; i < ed.length; ++i) {
-            changeSupport.firePropertyChange(CALENDAR_RESULTS, null, ed[i]);
-            doc = new DfmDocument();
-            // current information
-            TsInformationSet cinfo = info.generateInformation(spec.getModelSpec().getPublicationDelays(), ed[i]);
-            Ts[] curinput = new Ts[input.length];
-            for (int j = 0; j < input.length; ++j) {
-                curinput[j] = TsFactory.instance.createTs(input[j].getRawName(), null, cinfo.series(j));
-            }
-            doc.setInput(curinput);
-            // update the specification
-            DfmSpec curspec;
-            if (mustBeEstimated(ed[i], estimationDays)) {
-                curspec = spec.cloneDefinition();
-            } else {
-                curspec = spec.clone();
-            }
-            // update the time horizon
-            TsPeriod last = cinfo.getCurrentDomain().getLast();
-            TsPeriod end = last.clone();
-            end.set(horizon_);
-            curspec.getModelSpec().setForecastHorizon(end.minus(last));
-            doc.setSpecification(curspec);
-            doc.getResults();
-            spec = doc.getSpecification();
-
-            if (doc.getResults() != null) {
-                Node n = doc.getResults().getNode(DfmProcessingFactory.FINALC);
-                if (n != null && n.results != null) {
-                    SimulationResultsDocument rslts = new SimulationResultsDocument(n.results);
-                    rslts.setSmoothedSeriesStdev(doc.getDfmResults() == null ? null : doc.getDfmResults().getSmoothedSeriesStdev());
-                    rslts_.put(ed[i], rslts);
-                } else {
-                    rslts_.put(ed[i], null);
-                }
+            estimated[i] = mustBeEstimated(ed[i], estimationDays);
+        }
 
-                if (doc.getDfmResults() != null) {
-                    doc.getDfmResults().clear();
+        ForkJoinPool pool = parallelism_ > 1 ? new ForkJoinPool(parallelism_) : null;
+        try {
+            int i = 0;
+            while (i < ed.length) {
+                // a specified model is not modified by the processing: the
+                // next dates till the next re-estimation are independent
+                if (pool != null && !estimated[i] && spec.getModelSpec().isSpecified()) {
+                    int j = i + 1;
+                    while (j < ed.length && !estimated[j]) {
+                        ++j;
+                    }
+                    processSegment(pool, spec, input, info, ed, i, j);
+                    i = j;
+                } else {
+                    changeSupport.firePropertyChange(CALENDAR_RESULTS, null, ed[i]);
+                    DfmDocument doc = createDocument(spec, input, info, ed[i], estimated[i]);
+                    doc.getResults();
+                    spec = doc.getSpecification();
+                    rslts_.put(ed[i], compute(doc));
+                    ++i;
                 }
-                doc.clear();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             } else {
-                rslts_.put(ed[i], null);
+                throw new RuntimeException(cause);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
             }
         }
 
         return true;
     }
 
+    /**
+     * Processes concurrently the publication dates [start, end[, which
+     * don't need any re-estimation
+     */
+    private void processSegment(ForkJoinPool pool, DfmSpec spec, Ts[] input, TsInformationSet info,
+            final Day[] ed, int start, int end) throws InterruptedException, ExecutionException {
+        List<Callable<SimulationResultsDocument>> tasks = new ArrayList<>();
+        for (int i = start; i < end; ++i) {
+            final Day day = ed[i];
+            final DfmDocument doc = createDocument(spec, input, info, day, false);
+            tasks.add(new Callable<SimulationResultsDocument>() {
+                @Override
+                public SimulationResultsDocument call() {
+                    changeSupport.firePropertyChange(CALENDAR_RESULTS, null, day);
+                    return compute(doc);
+                }
+            });
+        }
+        List<Future<SimulationResultsDocument>> results = pool.invokeAll(tasks);
+        for (int i = start; i < end; ++i) {
+            rslts_.put(ed[i], results.get(i - start).get());
+        }
+    }
+
+    /**
+     * Creates the document corresponding to the information available at the
+     * given publication date
+     */
+    private DfmDocument createDocument(DfmSpec spec, Ts[] input, TsInformationSet info, Day day, boolean estimate) {
+        DfmDocument doc = new DfmDocument();
+        // current information
+        TsInformationSet cinfo = info.generateInformation(spec.getModelSpec().getPublicationDelays(), day);
+        Ts[] curinput = new Ts[input.length];
+        for (int j = 0; j < input.length; ++j) {
+            curinput[j] = TsFactory.instance.createTs(input[j].getRawName(), null, cinfo.series(j));
+        }
+        doc.setInput(curinput);
+        // update the specification
+        DfmSpec curspec;
+        if (estimate) {
+            curspec = spec.cloneDefinition();
+        } else {
+            curspec = spec.clone();
+        }
+        // update the time horizon
+        TsPeriod last = cinfo.getCurrentDomain().getLast();
+        TsPeriod end = last.clone();
+        end.set(horizon_);
+        curspec.getModelSpec().setForecastHorizon(end.minus(last));
+        doc.setSpecification(curspec);
+        return doc;
+    }
+
+    /**
+     * Processes the document and retrieves its simulation results. The
+     * results of the document are cleared
+     */
+    private SimulationResultsDocument compute(DfmDocument doc) {
+        if (doc.getResults() == null) {
+            return null;
+        }
+        SimulationResultsDocument rslts = null;
+        Node n = doc.getResults().getNode(DfmProcessingFactory.FINALC);
+        if (n != null && n.results != null) {
+            rslts = new SimulationResultsDocument(n.results);
+            rslts.setSmoothedSeriesStdev(doc.getDfmResults() == null ? null : doc.getDfmResults().getSmoothedSeriesStdev());
+        }
+
+        if (doc.getDfmResults() != null) {
+            doc.getDfmResults().clear();
+        }
+        doc.clear();
+        return rslts;
+    }
+
     private boolean mustBeEstimated(Day day, List<Day> estimationDays) {
         if (estimationDays == null || estimationDays.isEmpty()) {
             return false;
@@ -24,7 +24,12 @@ import ec.tstoolkit.algorithm.CompositeResults;
 import ec.tstoolkit.dfm.DfmNews;
 import ec.tstoolkit.dfm.DfmSpec;
 import ec.tstoolkit.timeseries.information.TsInformationSet;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  *
@@ -33,6 +38,19 @@ import java.util.Date;
 public class VersionedDfmDocument extends VersionedDocument<DfmSpec, Ts[], CompositeResults, DfmDocument>
         implements Cloneable {
 
+    /**
+     * Maximum number of news kept in memory. The news are softly referenced,
+     * so that they can also be released by the garbage collector
+     */
+    public static final int NEWS_CACHE_SIZE = 12;
+
+    private static enum NewsType {
+
+        News, Revisions, NewsAndRevisions
+    }
+
+    private Map<NewsKey, SoftReference<DfmNews>> newsCache_ = newNewsCache();
+
     public VersionedDfmDocument() {
         super(new DfmDocument());
     }
@@ -41,6 +59,7 @@ public class VersionedDfmDocument extends VersionedDocument<DfmSpec, Ts[], Compo
     public VersionedDfmDocument clone() {
         try {
             VersionedDfmDocument doc = (VersionedDfmDocument) super.clone();
+            doc.newsCache_ = newNewsCache();
             doc.setCurrent(getCurrent().clone());
             doc.clearVersions(0);
             for (int i = 0; i < getVersionCount(); ++i) {
@@ -96,64 +115,99 @@ public class VersionedDfmDocument extends VersionedDocument<DfmSpec, Ts[], Compo
         }
     }
     
-    public DfmNews getRevisionsNews(int ver){
-        DfmDocument refdoc=null;
-        if (ver == -1)
-            refdoc=this.getLastVersion();
-        else
-            refdoc=this.getVersion(ver);
-        if (refdoc == null)
+    public DfmNews getRevisionsNews(int ver) {
+        return getNews(NewsType.Revisions, ver);
+    }
+
+    public DfmNews getNews(int ver) {
+        return getNews(NewsType.News, ver);
+    }
+
+    public DfmNews getNewsAndRevisions(int ver) {
+        return getNews(NewsType.NewsAndRevisions, ver);
+    }
+
+    /**
+     * Removes all the news kept in memory
+     */
+    public synchronized void clearNewsCache() {
+        newsCache_.clear();
+    }
+
+    private DfmNews getNews(NewsType type, int ver) {
+        DfmDocument refdoc;
+        if (ver == -1) {
+            refdoc = this.getLastVersion();
+        } else {
+            refdoc = this.getVersion(ver);
+        }
+        if (refdoc == null) {
             return null;
-        DfmResults cur=this.getCurrent().getDfmResults(),
-                prev=refdoc.getDfmResults();
-        TsInformationSet curinfo = cur.getInput();
-        TsInformationSet previnfo = prev.getInput();
-        TsInformationSet revinfo = previnfo.revisedData(curinfo);
-        DfmNews news=new DfmNews(cur.getModel());
-        
-        if (! news.process(previnfo, revinfo))
+        }
+        DfmResults cur = this.getCurrent().getDfmResults(),
+                prev = refdoc.getDfmResults();
+        if (cur == null || prev == null) {
             return null;
+        }
+        // the results of the documents are re-computed when their model or
+        // their data are modified, which invalidates the cached news
+        NewsKey key = new NewsKey(type, cur, prev);
+        synchronized (this) {
+            removeStaleNews();
+            SoftReference<DfmNews> ref = newsCache_.get(key);
+            if (ref != null) {
+                DfmNews news = ref.get();
+                if (news != null) {
+                    return news;
+                }
+            }
+        }
+        DfmNews news = computeNews(type, cur, prev);
+        if (news != null) {
+            synchronized (this) {
+                newsCache_.put(key, new SoftReference<>(news));
+            }
+        }
         return news;
     }
 
-    public DfmNews getNews(int ver){
-        DfmDocument refdoc;
-        if (ver == -1)
-            refdoc=this.getLastVersion();
-        else
-            refdoc=this.getVersion(ver);
-        if (refdoc == null)
-            return null;
-        DfmResults cur=this.getCurrent().getDfmResults(),
-                prev=refdoc.getDfmResults();
+    private static DfmNews computeNews(NewsType type, DfmResults cur, DfmResults prev) {
         TsInformationSet curinfo = cur.getInput();
         TsInformationSet previnfo = prev.getInput();
-        TsInformationSet revinfo = previnfo.revisedData(curinfo);
-        DfmNews news=new DfmNews(cur.getModel());
-        
-        if (! news.process(revinfo, curinfo))
+        DfmNews news = new DfmNews(cur.getModel());
+        boolean ok;
+        switch (type) {
+            case Revisions:
+                ok = news.process(previnfo, previnfo.revisedData(curinfo));
+                break;
+            case News:
+                ok = news.process(previnfo.revisedData(curinfo), curinfo);
+                break;
+            default:
+                ok = news.process(previnfo, curinfo);
+                break;
+        }
+        if (!ok) {
             return null;
+        }
+        // the cached news are shared: the smoothing of the new data, which
+        // is otherwise computed on demand, must not be modified afterwards
+        news.getNewSmoothingResults();
         return news;
     }
-    
-    public DfmNews getNewsAndRevisions(int ver){
-        DfmDocument refdoc;
-        if (ver == -1)
-            refdoc=this.getLastVersion();
-        else
-            refdoc=this.getVersion(ver);
-        if (refdoc == null)
-            return null;
-        DfmResults cur=this.getCurrent().getDfmResults(),
-                prev=refdoc.getDfmResults();
-        TsInformationSet curinfo=cur.getInput(), previnfo=prev.getInput();
-        DfmNews news=new DfmNews(cur.getModel());
-        
-        if (! news.process(previnfo, curinfo))
-            return null;
-        return news;
+
+    /**
+     * Removes the news of results that have been garbage collected
+     */
+    private void removeStaleNews() {
+        Iterator<NewsKey> iter = newsCache_.keySet().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().isStale()) {
+                iter.remove();
+            }
+        }
     }
-    
+
     public void unlockModel() {
         DfmDocument current = getCurrent();
         if (current != null) {
@@ -161,4 +215,56 @@ public class VersionedDfmDocument extends VersionedDocument<DfmSpec, Ts[], Compo
         }
     }
 
+    private static Map<NewsKey, SoftReference<DfmNews>> newNewsCache() {
+        return new LinkedHashMap<NewsKey, SoftReference<DfmNews>>(16, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<NewsKey, SoftReference<DfmNews>> eldest) {
+                return size() > NEWS_CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * Identifies the news by the results (compared by reference) of the
+     * current document and of the reference version. The results are weakly
+     * referenced, so that the cache doesn't keep outdated results alive
+     */
+    private static final class NewsKey {
+
+        private final NewsType type;
+        private final WeakReference<DfmResults> cur, prev;
+        private final int hash;
+
+        private NewsKey(NewsType type, DfmResults cur, DfmResults prev) {
+            this.type = type;
+            this.cur = new WeakReference<>(cur);
+            this.prev = new WeakReference<>(prev);
+            this.hash = 31 * (31 * type.hashCode() + System.identityHashCode(cur)) + System.identityHashCode(prev);
+        }
+
+        private boolean isStale() {
+            return cur.get() == null || prev.get() == null;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof NewsKey)) {
+                return false;
+            }
+            NewsKey other = (NewsKey) obj;
+            if (type != other.type || hash != other.hash || isStale()) {
+                return false;
+            }
+            return cur.get() == other.cur.get() && prev.get() == other.prev.get();
+        }
+    }
+
 }
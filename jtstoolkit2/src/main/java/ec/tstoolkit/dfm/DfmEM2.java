@@ -25,12 +25,21 @@ import ec.tstoolkit.maths.realfunctions.IFunctionInstance;
 import ec.tstoolkit.maths.realfunctions.IParametersDomain;
 import ec.tstoolkit.maths.realfunctions.NumericalDerivatives;
 import ec.tstoolkit.maths.realfunctions.riso.LbfgsMinimizer;
+import ec.tstoolkit.mssf2.IMSmoothingResults;
 import ec.tstoolkit.mssf2.MFilter;
 import ec.tstoolkit.mssf2.MPredictionErrorDecomposition;
 import ec.tstoolkit.mssf2.MultivariateSsfData;
 import ec.tstoolkit.ssf2.ResidualsCumulator;
 import ec.tstoolkit.var.VarSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  *
@@ -43,9 +52,18 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
     private DynamicFactorModel dfm;
     private TsInformationSet data;
     private Matrix M;
-    private final EnumMap<DynamicFactorModel.MeasurementType, DataBlock[]> G = new EnumMap<>(DynamicFactorModel.MeasurementType.class);
-    private final EnumMap<DynamicFactorModel.MeasurementType, Table<DataBlock>> G2 = new EnumMap<>(DynamicFactorModel.MeasurementType.class);
-    private DataBlock Efij[];
+    // sufficient statistics of the M-step, computed by the E-step
+    // Esum = sum(E(f(t)f(t)')), E0 = E(f(0)f(0)'), Gy(., i) = sum(y(i,t)Z(i)E(f(t)))
+    private Matrix Esum, E0, Gy;
+    // weights of the factors of each measurement type
+    private final EnumMap<DynamicFactorModel.MeasurementType, DataBlock> Z = new EnumMap<>(DynamicFactorModel.MeasurementType.class);
+    // observation pattern of each measurement and sum of the squared observations
+    private Pattern[] mpatterns;
+    private final List<Pattern> patterns = new ArrayList<>();
+    private double[] yy;
+    private final Moments moments = new Moments();
+    // maximum number of step halvings of a SQUAREM extrapolation
+    private static final int MAX_HALVINGS = 5;
     private int maxiter_ = 50000, iter_;
     private boolean all_ = true, correctStart_ = true;
     private int modelSize;
@@ -53,10 +71,14 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
     private double ll_;
     private int numiter_ = 50;
     private double eps_ = 1e-6;
+    private boolean accelerated_;
+    private int parallelism_ = 1;
+    private ForkJoinPool pool_;
 
     public DfmEM2(IDfmInitializer initializer) {
         this.initializer = initializer;
         processor.setCalcVariance(true);
+        processor.setReusingWorkspace(true);
     }
 
     public double getFinalLogLikelihood() {
@@ -95,85 +117,203 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
         maxiter_ = i;
     }
 
-    public int getMaxNumericIter() {
-        return numiter_;
+    /**
+     * Number of EM steps of the last estimation
+     *
+     * @return
+     */
+    public int getIterationsCount() {
+        return iter_;
     }
 
-    public void setMaxNumericIter(int i) {
-        numiter_ = i;
+    public boolean isAccelerated() {
+        return accelerated_;
     }
 
-    private DataBlock ef(int i) {
-        return processor.getSmoothingResults().getSmoothedStates().item(i);
+    /**
+     * Accelerates the EM algorithm by SQUAREM extrapolations (Varadhan and
+     * Roland). Each cycle uses two EM steps; the extrapolated model is only
+     * accepted if it is valid and if it doesn't decrease the likelihood
+     *
+     * @param accelerated
+     */
+    public void setAccelerated(boolean accelerated) {
+        accelerated_ = accelerated;
     }
 
-    private DataBlock vf(int i, int j) {
-        return new DataBlock(processor.getSmoothingResults().componentCovar(i, j));
+    public int getParallelism() {
+        return parallelism_;
     }
 
-    private DataBlock ef(int i, int j) {
-        if (i > j) {
-            return ef(j, i);
-        }
-        int idx = i + modelSize * j;
-        DataBlock cur = Efij[idx];
-        if (cur == null) {
-            cur = vf(i, j);
-            cur.addAXY(1, ef(i), ef(j));
-            Efij[idx] = cur;
-        }
-        return cur;
+    /**
+     * Number of threads used in the M-step of the loadings, which is solved
+     * independently for each measurement. 1 (default) for a sequential
+     * processing
+     *
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+        parallelism_ = Math.max(1, parallelism);
+    }
+
+    public int getMaxNumericIter() {
+        return numiter_;
+    }
+
+    public void setMaxNumericIter(int i) {
+        numiter_ = i;
     }
 
-    private void calcG() {
-        G.clear();
-        G2.clear();
-        for (int i = 0; i < Efij.length; ++i) {
-            Efij[i] = null;
+    /**
+     * Measurements of the same type observed at the same periods. They share
+     * the sum of the moments of their factors, sum(Z E(f(t)f(t)') Z'), for
+     * the periods with an observation
+     */
+    private static class Pattern {
+
+        private final DynamicFactorModel.MeasurementType type;
+        private final boolean[] obs;
+        private final int nobs;
+        private final Matrix S;
+
+        private Pattern(DynamicFactorModel.MeasurementType type, boolean[] obs, int nf) {
+            this.type = type;
+            this.obs = obs;
+            int n = 0;
+            for (int i = 0; i < obs.length; ++i) {
+                if (obs[i]) {
+                    ++n;
+                }
+            }
+            this.nobs = n;
+            this.S = new Matrix(nf, nf);
         }
-        for (DynamicFactorModel.MeasurementDescriptor desc : dfm.getMeasurements()) {
+    }
+
+    private void initPatterns() {
+        Z.clear();
+        patterns.clear();
+        int nf = dfm.getFactorsCount();
+        List<DynamicFactorModel.MeasurementDescriptor> mdescs = dfm.getMeasurements();
+        mpatterns = new Pattern[mdescs.size()];
+        yy = new double[mdescs.size()];
+        for (int i = 0; i < mdescs.size(); ++i) {
+            DynamicFactorModel.MeasurementDescriptor desc = mdescs.get(i);
             DynamicFactorModel.MeasurementType type = DynamicFactorModel.
                     getMeasurementType(desc.type);
-            if (!G.containsKey(type)) {
-                int len = desc.type.getLength();
-                DataBlock z = new DataBlock(len);
+            if (!Z.containsKey(type)) {
+                DataBlock z = new DataBlock(desc.type.getLength());
                 desc.type.fill(z);
-                int nf = dfm.getFactorsCount();
-                DataBlock[] g = new DataBlock[nf];
-                Table<DataBlock> g2 = new Table<>(nf, nf);
-                int nb = dfm.getBlockLength();
-                for (int i = 0, j = 0; i < nf; ++i, j += nb) {
-                    DataBlock column = new DataBlock(dataSize);
-                    for (int k = 0; k < len; ++k) {
-                        column.addAY(z.get(k), ef(j + k));
-                    }
-                    g[i] = column;
+                Z.put(type, z);
+            }
+            DataBlock y = M.column(i);
+            boolean[] obs = new boolean[dataSize];
+            double s = 0;
+            for (int t = 0; t < dataSize; ++t) {
+                double yt = y.get(t);
+                if (!Double.isNaN(yt)) {
+                    obs[t] = true;
+                    s += yt * yt;
                 }
+            }
+            yy[i] = s;
+            Pattern pattern = null;
+            for (Pattern cur : patterns) {
+                if (cur.type == type && Arrays.equals(cur.obs, obs)) {
+                    pattern = cur;
+                    break;
+                }
+            }
+            if (pattern == null) {
+                pattern = new Pattern(type, obs, nf);
+                patterns.add(pattern);
+            }
+            mpatterns[i] = pattern;
+        }
+    }
+
+    /**
+     * Accumulates the sufficient statistics of the M-step while the smoother
+     * runs: the moments E(f(i,t)f(j,t)) = Var(f(i,t), f(j,t)) +
+     * E(f(i,t))E(f(j,t)) are computed from the output of the smoother (which
+     * doesn't store the variances of the smoothed states, but still computes
+     * them at each period) and they are only kept in sums. The lag-one cross moments used by the M-step are moments
+     * of the state, whose block length is greater than the number of lags.
+     */
+    private class Moments implements IMSmoothingResults {
+
+        private Matrix W;
+        private final EnumMap<DynamicFactorModel.MeasurementType, DataBlock> g = new EnumMap<>(DynamicFactorModel.MeasurementType.class);
+        private final EnumMap<DynamicFactorModel.MeasurementType, Matrix> g2 = new EnumMap<>(DynamicFactorModel.MeasurementType.class);
+
+        @Override
+        public void prepare(int n, int d, int v) {
+            if (Esum == null || Esum.getRowsCount() != d) {
+                Esum = new Matrix(d, d);
+                E0 = new Matrix(d, d);
+                W = new Matrix(d, d);
+            } else {
+                Esum.set(0);
+                E0.set(0);
+            }
+            int nf = dfm.getFactorsCount();
+            if (Gy == null || Gy.getColumnsCount() != mpatterns.length) {
+                Gy = new Matrix(nf, mpatterns.length);
+            } else {
+                Gy.set(0);
+            }
+            for (Pattern pattern : patterns) {
+                pattern.S.set(0);
+            }
+            g.clear();
+            g2.clear();
+            for (DynamicFactorModel.MeasurementType type : Z.keySet()) {
+                g.put(type, new DataBlock(nf));
+                g2.put(type, new Matrix(nf, nf));
+            }
+        }
+
+        @Override
+        public void save(int pos, DataBlock a, Matrix p) {
+            // W = E(f(t)f(t)')
+            W.copy(p);
+            W.addXaXt(1, a);
+            Esum.add(W);
+            if (pos == 0) {
+                E0.copy(W);
+            }
+            // moments of the factors of each measurement type
+            int nf = dfm.getFactorsCount(), nb = dfm.getBlockLength();
+            for (Map.Entry<DynamicFactorModel.MeasurementType, DataBlock> entry : Z.entrySet()) {
+                DataBlock z = entry.getValue();
+                DataBlock gt = g.get(entry.getKey());
+                Matrix g2t = g2.get(entry.getKey());
+                int len = z.getLength();
                 for (int i = 0, j = 0; i < nf; ++i, j += nb) {
+                    gt.set(i, z.dot(a.range(j, j + len)));
                     for (int k = 0, l = 0; k <= i; ++k, l += nb) {
-                        DataBlock column2 = new DataBlock(dataSize);
+                        double x = 0;
                         for (int pr = 0; pr < len; ++pr) {
                             double zr = z.get(pr);
                             if (zr != 0) {
-                                for (int pc = 0; pc < len; ++pc) {
-                                    double zc = z.get(pc);
-                                    if (zc != 0) {
-                                        column2.addAY(zr * zc, vf(j + pr, l + pc));
-                                    }
-                                }
+                                x += zr * z.dot(W.row(j + pr).range(l, l + len));
                             }
                         }
-                        column2.addAXY(1, g[i], g[k]);
-                        g2.set(i, k, column2);
-                        if (i != k) {
-                            g2.set(k, i, column2);
-                        }
-
+                        g2t.set(i, k, x);
+                        g2t.set(k, i, x);
                     }
                 }
-
-                G.put(type, g);
-                G2.put(type, g2);
+            }
+            for (Pattern pattern : patterns) {
+                if (pattern.obs[pos]) {
+                    pattern.S.add(g2.get(pattern.type));
+                }
+            }
+            for (int i = 0; i < mpatterns.length; ++i) {
+                double y = M.get(pos, i);
+                if (!Double.isNaN(y)) {
+                    Gy.column(i).addAY(y, g.get(mpatterns[i].type));
+                }
             }
         }
     }
@@ -189,20 +329,32 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
         }
         modelSize = dfm.getBlockLength() * dfm.getFactorsCount();
         dataSize = data.getCurrentDomain().getLength();
-        Efij = new DataBlock[modelSize * modelSize];
         M = data.generateMatrix(null);
+        initPatterns();
         if (initializer != null) {
             initializer.initialize(dfm, data);
         }
         iter_ = 0;
         ll_ = 0;
         filter(true);
-        while (iter_++ < maxiter_) {
-            if (!EStep()) {
-                break;
+        pool_ = parallelism_ > 1 ? new ForkJoinPool(parallelism_) : null;
+        try {
+            if (accelerated_) {
+                squarem();
+            } else {
+                while (iter_++ < maxiter_) {
+                    if (!EStep()) {
+                        break;
+                    }
+                    if (!MStep()) {
+                        break;
+                    }
+                }
             }
-            if (!MStep()) {
-                break;
+        } finally {
+            if (pool_ != null) {
+                pool_.shutdown();
+                pool_ = null;
             }
         }
 
@@ -215,13 +367,18 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
         return true;
     }
 
+    private Likelihood likelihood(DynamicFactorModel model) {
+        MFilter filter = new MFilter();
+        MPredictionErrorDecomposition results = new MPredictionErrorDecomposition(true);
+        filter.process(model.ssfRepresentation(), new MultivariateSsfData(M.subMatrix().transpose(), null), results);
+        Likelihood ll = new Likelihood();
+        evaluate(results, ll);
+        return ll;
+    }
+
     private void filter(boolean adjust) {
         try {
-            MFilter filter = new MFilter();
-            MPredictionErrorDecomposition results = new MPredictionErrorDecomposition(true);
-            filter.process(dfm.ssfRepresentation(), new MultivariateSsfData(data.generateMatrix(null).subMatrix().transpose(), null), results);
-            Likelihood ll = new Likelihood();
-            evaluate(results, ll);
+            Likelihood ll = likelihood(dfm);
             ll_ = ll.getLogLikelihood();
             if (adjust) {
                 dfm.rescaleVariances(ll.getSigma());
@@ -231,8 +388,137 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
         }
     }
 
+    /**
+     * SQUAREM (scheme S3): from the model p0 and two EM steps p1 = F(p0), p2 =
+     * F(p1), the extrapolated model is p0 - 2a r + a^2 v, where r = p1 - p0,
+     * v = p2 - 2 p1 + p0 and a = -|r|/|v|. The step length is halved
+     * (towards a = -1, which gives p2) till the extrapolated model is valid
+     * and its likelihood is not smaller than the likelihood of p2. After
+     * MAX_HALVINGS rejections, the algorithm goes on from p2.
+     */
+    private void squarem() {
+        while (iter_ < maxiter_) {
+            DynamicFactorModel m0 = dfm.clone();
+            DataBlock p0 = parameters(m0);
+            if (!emStep()) {
+                break;
+            }
+            DataBlock p1 = parameters(dfm);
+            if (!emStep()) {
+                break;
+            }
+            DataBlock p2 = parameters(dfm);
+            DataBlock r = p1.deepClone();
+            r.addAY(-1, p0);
+            DataBlock v = p2.deepClone();
+            v.addAY(-1, p1);
+            v.addAY(-1, r);
+            double nv = v.nrm2();
+            if (nv == 0) {
+                continue;
+            }
+            double alpha = -r.nrm2() / nv;
+            if (alpha >= -1) {
+                continue;
+            }
+            double ll2 = Double.NaN;
+            for (int k = 0; k < MAX_HALVINGS && alpha < -1; ++k) {
+                DataBlock p = p0.deepClone();
+                p.addAY(-2 * alpha, r);
+                p.addAY(alpha * alpha, v);
+                DynamicFactorModel m = m0.clone();
+                if (setParameters(m, p) && m.isValid()) {
+                    try {
+                        if (Double.isNaN(ll2)) {
+                            ll2 = likelihood(dfm).getLogLikelihood();
+                        }
+                        double ll = likelihood(m).getLogLikelihood();
+                        if (!Double.isNaN(ll) && ll >= ll2) {
+                            dfm = m;
+                            break;
+                        }
+                    } catch (RuntimeException err) {
+                    }
+                }
+                alpha = (alpha - 1) / 2;
+            }
+        }
+    }
+
+    private boolean emStep() {
+        return iter_++ < maxiter_ && EStep() && MStep();
+    }
+
+    /**
+     * Parameters of the model, used for the extrapolations: loadings,
+     * variances of the measurements, VAR parameters and covariance of the
+     * shocks (lower triangular part, by row)
+     */
+    private DataBlock parameters(DynamicFactorModel m) {
+        int n = 0;
+        for (DynamicFactorModel.MeasurementDescriptor desc : m.getMeasurements()) {
+            for (int i = 0; i < desc.coeff.length; ++i) {
+                if (!Double.isNaN(desc.coeff[i])) {
+                    ++n;
+                }
+            }
+            ++n;
+        }
+        DynamicFactorModel.TransitionDescriptor tdesc = m.getTransition();
+        int nf = m.getFactorsCount();
+        double[] vp = tdesc.varParams.internalStorage();
+        DataBlock p = new DataBlock(n + vp.length + nf * (nf + 1) / 2);
+        int k = 0;
+        for (DynamicFactorModel.MeasurementDescriptor desc : m.getMeasurements()) {
+            for (int i = 0; i < desc.coeff.length; ++i) {
+                if (!Double.isNaN(desc.coeff[i])) {
+                    p.set(k++, desc.coeff[i]);
+                }
+            }
+            p.set(k++, desc.var);
+        }
+        for (int i = 0; i < vp.length; ++i) {
+            p.set(k++, vp[i]);
+        }
+        for (int i = 0; i < nf; ++i) {
+            for (int j = 0; j <= i; ++j) {
+                p.set(k++, tdesc.covar.get(i, j));
+            }
+        }
+        return p;
+    }
+
+    private boolean setParameters(DynamicFactorModel m, IReadDataBlock p) {
+        int k = 0;
+        for (DynamicFactorModel.MeasurementDescriptor desc : m.getMeasurements()) {
+            for (int i = 0; i < desc.coeff.length; ++i) {
+                if (!Double.isNaN(desc.coeff[i])) {
+                    desc.coeff[i] = p.get(k++);
+                }
+            }
+            desc.var = p.get(k++);
+            if (desc.var < 0) {
+                return false;
+            }
+        }
+        DynamicFactorModel.TransitionDescriptor tdesc = m.getTransition();
+        int nf = m.getFactorsCount();
+        double[] vp = tdesc.varParams.internalStorage();
+        for (int i = 0; i < vp.length; ++i) {
+            vp[i] = p.get(k++);
+        }
+        for (int i = 0; i < nf; ++i) {
+            for (int j = 0; j <= i; ++j) {
+                double x = p.get(k++);
+                tdesc.covar.set(i, j, x);
+                tdesc.covar.set(j, i, x);
+            }
+        }
+        return true;
+    }
+
     private boolean EStep() {
-        if (!processor.process(dfm, data)) {
+        if (!processor.process(dfm, data, moments)) {
             return false;
         }
         Likelihood ll = new Likelihood();
@@ -247,7 +533,6 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
         if (hinfo.cancel) {
             return false;
         }
-        calcG();
         return true;
     }
 
@@ -274,82 +559,130 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
 
     private void mloadings() {
         // maximise loading
-        int i = 0;
-        for (DynamicFactorModel.MeasurementDescriptor mdesc
-                : dfm.getMeasurements()) {
-            DynamicFactorModel.MeasurementType type = DynamicFactorModel.
-                    getMeasurementType(mdesc.type);
-            DataBlock[] g = G.get(type);
-            Table<DataBlock> g2 = G2.get(type);
-            DataBlock y = M.column(i++);
-            int nobs = 0;
-            for (int k = 0; k < dataSize; ++k) {
-                if (!Double.isNaN(y.get(k))) {
-                    ++nobs;
-                }
+        final List<DynamicFactorModel.MeasurementDescriptor> mdescs = dfm.getMeasurements();
+        int n = mdescs.size();
+        if (pool_ == null || n < 2) {
+            Scratch scratch = new Scratch();
+            for (int i = 0; i < n; ++i) {
+                mloading(mdescs.get(i), i, scratch);
             }
-            double[] gy = new double[mdesc.getUsedFactorsCount()];
-            Matrix G2 = new Matrix(gy.length, gy.length);
-            for (int j = 0, u = 0; j < mdesc.coeff.length; ++j) {
-                if (!Double.isNaN(mdesc.coeff[j])) {
-                    DataBlock gj = g[j];
-                    for (int z = 0; z < dataSize; ++z) {
-                        double yz = y.get(z);
-                        if (!Double.isNaN(yz)) {
-                            gy[u] += gj.get(z) * yz;
-                        }
-                    }
-                    for (int k = 0, v = 0; k <= j; ++k) {
-                        if (!Double.isNaN(mdesc.coeff[k])) {
-                            double x = 0;
-                            DataBlock g2jk = g2.get(j, k);
-                            for (int z = 0; z < dataSize; ++z) {
-                                double yz = y.get(z);
-                                if (!Double.isNaN(yz)) {
-                                    x += g2jk.get(z);
-                                }
-                            }
-                            G2.set(u, v, x);
-                            ++v;
-                        }
+            return;
+        }
+        // the measurements are independent: they are split in chunks, which
+        // are solved in parallel, each with its own scratch matrices
+        int nchunks = Math.min(n, 4 * pool_.getParallelism());
+        List<Callable<Void>> tasks = new ArrayList<>(nchunks);
+        for (int c = 0; c < nchunks; ++c) {
+            final int i0 = c * n / nchunks, i1 = (c + 1) * n / nchunks;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    Scratch scratch = new Scratch();
+                    for (int i = i0; i < i1; ++i) {
+                        mloading(mdescs.get(i), i, scratch);
                     }
-                    ++u;
+                    return null;
                 }
+            });
+        }
+        try {
+            for (Future<Void> future : pool_.invokeAll(tasks)) {
+                future.get();
             }
-            SymmetricMatrix.fromLower(G2);
-            // C = G/GG or C * GG = G 
-            SymmetricMatrix.solve(G2, new DataBlock(gy), false);
-            for (int j = 0, u = 0; j < mdesc.coeff.length; ++j) {
-                if (!Double.isNaN(mdesc.coeff[j])) {
-                    mdesc.coeff[j] = gy[u++];
-                }
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            throw new DfmException(err.getMessage());
+        } catch (ExecutionException err) {
+            Throwable cause = err.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
-            double ee = 0;
-            for (int z = 0; z < dataSize; ++z) {
-                double yz = y.get(z);
-                if (!Double.isNaN(yz)) {
-                    ee += yz * yz;
-                    for (int j = 0; j < mdesc.coeff.length; ++j) {
-                        double cj = mdesc.coeff[j];
-                        if (!Double.isNaN(cj)) {
-                            double gj = g[j].get(z);
-                            ee -= 2 * cj * gj * yz;
-                            for (int k = 0; k < mdesc.coeff.length; ++k) {
-                                double ck = mdesc.coeff[k];
-                                if (!Double.isNaN(ck)) {
-                                    ee += g2.get(j, k).get(z) * cj * ck;
-                                }
-                            }
-                        }
+            throw new DfmException(cause.getMessage());
+        }
+    }
+
+    /**
+     * Work arrays of the M-step of the loadings, by number of used factors
+     */
+    private class Scratch {
+
+        private final double[][] gy;
+        private final Matrix[] G2;
+
+        private Scratch() {
+            int nf = dfm.getFactorsCount();
+            gy = new double[nf + 1][];
+            G2 = new Matrix[nf + 1];
+        }
+
+        private double[] gy(int n) {
+            if (gy[n] == null) {
+                gy[n] = new double[n];
+            } else {
+                Arrays.fill(gy[n], 0);
+            }
+            return gy[n];
+        }
+
+        private Matrix G2(int n) {
+            if (G2[n] == null) {
+                G2[n] = new Matrix(n, n);
+            } else {
+                G2[n].set(0);
+            }
+            return G2[n];
+        }
+    }
+
+    /**
+     * Loadings and variance of the i-th measurement. Only the given descriptor
+     * is modified
+     */
+    private void mloading(DynamicFactorModel.MeasurementDescriptor mdesc, int i, Scratch scratch) {
+        Pattern pattern = mpatterns[i];
+        Matrix S = pattern.S;
+        DataBlock gyi = Gy.column(i);
+        double[] gy = scratch.gy(mdesc.getUsedFactorsCount());
+        Matrix G2 = scratch.G2(gy.length);
+        for (int j = 0, u = 0; j < mdesc.coeff.length; ++j) {
+            if (!Double.isNaN(mdesc.coeff[j])) {
+                gy[u] = gyi.get(j);
+                for (int k = 0, v = 0; k <= j; ++k) {
+                    if (!Double.isNaN(mdesc.coeff[k])) {
+                        G2.set(u, v++, S.get(j, k));
                     }
                 }
+                ++u;
             }
-            if (ee < 0) {
-                mdesc.var = 1e-12;
-            } else {
-                mdesc.var = ee / nobs;
+        }
+        SymmetricMatrix.fromLower(G2);
+        // C = G/GG or C * GG = G 
+        SymmetricMatrix.solve(G2, new DataBlock(gy), false);
+        for (int j = 0, u = 0; j < mdesc.coeff.length; ++j) {
+            if (!Double.isNaN(mdesc.coeff[j])) {
+                mdesc.coeff[j] = gy[u++];
+            }
+        }
+        // ee = sum(y*y) - 2 * C * sum(y*g) + C * sum(g*g') * C'
+        double ee = yy[i];
+        for (int j = 0; j < mdesc.coeff.length; ++j) {
+            double cj = mdesc.coeff[j];
+            if (!Double.isNaN(cj)) {
+                ee -= 2 * cj * gyi.get(j);
+                for (int k = 0; k < mdesc.coeff.length; ++k) {
+                    double ck = mdesc.coeff[k];
+                    if (!Double.isNaN(ck)) {
+                        ee += S.get(j, k) * cj * ck;
+                    }
+                }
             }
         }
+        int nobs = pattern.nobs;
+        if (ee < 0) {
+            mdesc.var = 1e-12;
+        } else {
+            mdesc.var = ee / nobs;
+        }
     }
 
     private void mvar() {
@@ -364,7 +697,7 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
         for (int i = 0; i < nf; ++i) {
             for (int j = 0; j < nl; ++j) {
                 for (int k = 0; k < nf; ++k) {
-                    double x = ef(i * blen, k * blen + j + 1).sum();
+                    double x = Esum.get(i * blen, k * blen + j + 1);
                     f.set(i, j * nf + k, x);
                 }
             }
@@ -373,7 +706,7 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
             for (int k = 0; k < nf; ++k, ++r) {
                 for (int j = 1, c = 0; j <= nl; ++j) {
                     for (int l = 0; l < nf; ++l, ++c) {
-                        double x = ef(k * blen + i, l * blen + j).sum();
+                        double x = Esum.get(k * blen + i, l * blen + j);
                         f2.set(r, c, x);
                     }
                 }
@@ -399,7 +732,7 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
         Matrix Q = dfm.getTransition().covar;
         for (int i = 0; i < nf; ++i) {
             for (int j = 0; j <= i; ++j) {
-                Q.set(i, j, ef(i * blen, j * blen).sum());
+                Q.set(i, j, Esum.get(i * blen, j * blen));
             }
         }
         SymmetricMatrix.fromLower(Q);
@@ -450,7 +783,7 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
                 for (int k = 0; k < nc; ++k) {
                     for (int j = 0; j < nf; ++j) {
                         for (int l = 0; l < nc; ++l) {
-                            double v = ef(i * n + k + del, j * n + l + del).get(0);
+                            double v = E0.get(i * n + k + del, j * n + l + del);
                             K0.set(i * nc + k, j * nc + l, v);
                         }
                     }
@@ -479,10 +812,10 @@ public class DfmEM2 extends ProcessingHookProvider<DfmEM2, DynamicFactorModel> i
             Matrix K = new Matrix(n, n);
             for (int k = 0; k < n; ++k) {
                 for (int l = 0; l < n; ++l) {
-                    double s = ef(i + k * len, j + l * len).sum();
+                    double s = Esum.get(i + k * len, j + l * len);
 //                    // add first ef...
                     for (int u = 1; u < len - dfm.getTransition().nlags; ++u) {
-                        s += ef(i + u + k * len, j + u + l * len).get(0);
+                        s += E0.get(i + u + k * len, j + u + l * len);
                     }
                     K.set(k, l, s);
                 }
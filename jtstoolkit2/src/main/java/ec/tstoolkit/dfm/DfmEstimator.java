@@ -28,11 +28,13 @@ import ec.tstoolkit.maths.realfunctions.ISsqFunctionMinimizer;
 import ec.tstoolkit.maths.realfunctions.ProxyMinimizer;
 import ec.tstoolkit.maths.realfunctions.levmar.LevenbergMarquardtMethod;
 import ec.tstoolkit.mssf2.IMSsfData;
+import ec.tstoolkit.mssf2.IMSsfScore;
 import ec.tstoolkit.mssf2.MSsfAlgorithm;
 import ec.tstoolkit.mssf2.MSsfFunction;
 import ec.tstoolkit.mssf2.MSsfFunctionInstance;
 import ec.tstoolkit.mssf2.MultivariateSsfData;
 import ec.tstoolkit.timeseries.simplets.TsDomain;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  *
@@ -51,6 +53,30 @@ public class DfmEstimator implements IDfmEstimator {
     private boolean useBlockIterations_ = true, mixed_ = true;
     private Likelihood ll_;
     private DataBlock factors_;
+    private NumericalProcessingSpec.FilterEngine engine_ = NumericalProcessingSpec.FilterEngine.Standard;
+    private int parallelism_ = NumericalProcessingSpec.DEF_PARALLELISM;
+    private ForkJoinPool pool_;
+    private boolean analytic_ = true;
+    private IAbandonCriterion abandon_;
+    private boolean abandoned_;
+    private NumericalProcessingSpec.Information information_ = NumericalProcessingSpec.Information.Curvature;
+    private IMSsfData mdata_;
+    private IDfmMapping fmapping_;
+
+    /**
+     * Criterion used to stop an estimation that can't be successful (for
+     * instance in a multi-start estimation, see DfmMultiStartEstimator)
+     */
+    public static interface IAbandonCriterion {
+
+        /**
+         * Called after each cycle of the iterations (see setAbandonCriterion)
+         *
+         * @param ll The current log-likelihood
+         * @return True if the estimation should be abandoned
+         */
+        boolean abandon(double ll);
+    }
 
     public DfmEstimator() {
         min_ = new ProxyMinimizer(new LevenbergMarquardtMethod());
@@ -60,6 +86,54 @@ public class DfmEstimator implements IDfmEstimator {
         min_ = min.exemplar();
     }
 
+    /**
+     * Creates a new estimator with the same settings (and a new minimizer of
+     * the same type). The abandon criterion is not copied
+     *
+     * @return
+     */
+    public DfmEstimator exemplar() {
+        DfmEstimator e = new DfmEstimator(min_);
+        e.maxiter_ = maxiter_;
+        e.vunits_ = vunits_;
+        e.nstart_ = nstart_;
+        e.nnext_ = nnext_;
+        e.idom_ = idom_;
+        e.useBlockIterations_ = useBlockIterations_;
+        e.mixed_ = mixed_;
+        e.engine_ = engine_;
+        e.parallelism_ = parallelism_;
+        e.analytic_ = analytic_;
+        e.information_ = information_;
+        e.setPrecision(getPrecision());
+        return e;
+    }
+
+    public IAbandonCriterion getAbandonCriterion() {
+        return abandon_;
+    }
+
+    /**
+     * Criterion checked after each cycle of the block iterations. Without
+     * block iterations, the minimization is then done by cycles of
+     * getMaxIntermediateIter() iterations (each one restarted from the current
+     * parameters), at the end of which the criterion is checked. The
+     * estimation stops when it is met (see isAbandoned)
+     *
+     * @param abandon
+     */
+    public void setAbandonCriterion(IAbandonCriterion abandon) {
+        abandon_ = abandon;
+    }
+
+    /**
+     *
+     * @return True if the last estimation was stopped by the abandon criterion
+     */
+    public boolean isAbandoned() {
+        return abandoned_;
+    }
+
     public TsDomain getEstimationDomain() {
         return idom_;
     }
@@ -124,6 +198,60 @@ public class DfmEstimator implements IDfmEstimator {
         this.vunits_ = iv;
     }
 
+    public NumericalProcessingSpec.FilterEngine getFilterEngine() {
+        return engine_;
+    }
+
+    /**
+     * Filter used in the computation of the likelihood
+     *
+     * @param engine
+     */
+    public void setFilterEngine(NumericalProcessingSpec.FilterEngine engine) {
+        engine_ = engine;
+    }
+
+    public int getParallelism() {
+        return parallelism_;
+    }
+
+    /**
+     * Number of threads used in the computation of the numerical derivatives
+     *
+     * @param n
+     */
+    public void setParallelism(int n) {
+        parallelism_ = n;
+    }
+
+    public NumericalProcessingSpec.Information getInformation() {
+        return information_;
+    }
+
+    /**
+     * Method used for the information matrix (see getHessian)
+     *
+     * @param information
+     */
+    public void setInformation(NumericalProcessingSpec.Information information) {
+        information_ = information;
+    }
+
+    public boolean isAnalyticGradient() {
+        return analytic_;
+    }
+
+    /**
+     * Uses the analytic score of the model (when it is available) for the
+     * gradient of the likelihood. Only used by minimizers working on the
+     * likelihood (not on the sum of squares)
+     *
+     * @param analytic
+     */
+    public void setAnalyticGradient(boolean analytic) {
+        analytic_ = analytic;
+    }
+
     public boolean hasConverged() {
         return converged_;
     }
@@ -155,18 +283,34 @@ public class DfmEstimator implements IDfmEstimator {
             return new DfmMapping(model, mf, vf);
     }
 
+    private MSsfFunction function(IMSsfData mdata, IDfmMapping mapping, MSsfAlgorithm algorithm) {
+        MSsfFunction fn = new MSsfFunction(mdata, mapping, algorithm);
+        fn.setDerivativesPool(pool_);
+        if (analytic_ && mapping instanceof IMSsfScore) {
+            fn.setScore((IMSsfScore) mapping);
+        }
+        return fn;
+    }
+
     @Override
     public boolean estimate(final DynamicFactorModel dfm, TsInformationSet input) {
         converged_ = false;
+        abandoned_ = false;
         Matrix m = input.generateMatrix(idom_);
         MSsfAlgorithm algorithm = new MSsfAlgorithm();
+        algorithm.setUnivariate(engine_ == NumericalProcessingSpec.FilterEngine.Univariate);
+        algorithm.setSquareRoot(engine_ == NumericalProcessingSpec.FilterEngine.SquareRoot);
         IMSsfData mdata = new MultivariateSsfData(m.subMatrix().transpose(), null);
+        mdata_ = mdata;
         MSsfFunction fn;
         IDfmMapping mapping;
         MSsfFunctionInstance pt;
         int niter = 0;
         DynamicFactorModel model = dfm.clone();
         normalize(model);
+        if (parallelism_ > 1) {
+            pool_ = new ForkJoinPool(parallelism_);
+        }
         try {
             if (nstart_ > 0) {
                 setMessage(SIMPLIFIED);
@@ -174,6 +318,7 @@ public class DfmEstimator implements IDfmEstimator {
                 SimpleDfmMapping smapping = new SimpleDfmMapping(model);
                 smapping.validate(model);
                 fn = new MSsfFunction(mdata, smapping, algorithm);
+                fn.setDerivativesPool(pool_);
                 min_.minimize(fn, fn.evaluate(smapping.map(model)));
                 pt = (MSsfFunctionInstance) min_.getResult();
                 double var = pt.getLikelihood().getSigma();
@@ -188,7 +333,7 @@ public class DfmEstimator implements IDfmEstimator {
                 while (true) {
                     normalize(model);
                     mapping =mapping(model, true, false);
-                    fn = new MSsfFunction(mdata, mapping, algorithm);
+                    fn = function(mdata, mapping, algorithm);
                     setMessage(VSTEP);
                     min_.minimize(fn, fn.evaluate(mapping.map(model)));
                     niter += min_.getIterCount();
@@ -205,7 +350,7 @@ public class DfmEstimator implements IDfmEstimator {
                         em.initialize(model, input);
                     } else {
                         mapping = mapping(model, false, true);
-                        fn = new MSsfFunction(mdata, mapping, algorithm);
+                        fn = function(mdata, mapping, algorithm);
                         setMessage(MSTEP);
                         min_.minimize(fn, fn.evaluate(mapping.map(model)));
                         niter += min_.getIterCount();
@@ -218,7 +363,7 @@ public class DfmEstimator implements IDfmEstimator {
 
                     }
                     mapping = mapping(model, false, false);
-                    fn = new MSsfFunction(mdata, mapping, algorithm);
+                    fn = function(mdata, mapping, algorithm);
                     setMessage(ALL);
                     converged_ = min_.minimize(fn, fn.evaluate(mapping.map(model)))
                             && min_.getIterCount() < nnext_;
@@ -233,27 +378,50 @@ public class DfmEstimator implements IDfmEstimator {
                     if (converged_ || niter >= maxiter_ || stop) {
                         break;
                     }
+                    if (abandon_ != null && abandon_.abandon(ll_.getLogLikelihood())) {
+                        abandoned_ = true;
+                        break;
+                    }
                 }
             } else {
-                normalize(model);
-                mapping =mapping(model, false, false);
-                fn = new MSsfFunction(mdata, mapping, algorithm);
-                min_.setMaxIter(maxiter_);
-                setMessage(ALL);
-                converged_ = min_.minimize(fn, fn.evaluate(mapping.map(model)));
-                pt = (MSsfFunctionInstance) min_.getResult();
-                double var = pt.getLikelihood().getSigma();
-                model = ((DynamicFactorModel.Ssf) pt.ssf).getModel().clone();
-                model.rescaleVariances(var);
-                ll_ = pt.getLikelihood();
+                // a single minimization, unless the abandon criterion has to
+                // be checked
+                int ncycle = abandon_ == null ? maxiter_ : Math.max(1, nnext_);
+                while (true) {
+                    normalize(model);
+                    mapping =mapping(model, false, false);
+                    fn = function(mdata, mapping, algorithm);
+                    int nmax = Math.min(ncycle, maxiter_ - niter);
+                    min_.setMaxIter(nmax);
+                    setMessage(ALL);
+                    converged_ = min_.minimize(fn, fn.evaluate(mapping.map(model)));
+                    niter += min_.getIterCount();
+                    pt = (MSsfFunctionInstance) min_.getResult();
+                    double var = pt.getLikelihood().getSigma();
+                    model = ((DynamicFactorModel.Ssf) pt.ssf).getModel().clone();
+                    model.rescaleVariances(var);
+                    ll_ = pt.getLikelihood();
+                    if (converged_ || niter >= maxiter_ || min_.getIterCount() < nmax) {
+                        break;
+                    }
+                    if (abandon_ != null && abandon_.abandon(ll_.getLogLikelihood())) {
+                        abandoned_ = true;
+                        break;
+                    }
+                }
             }
             return true;
         } catch (Exception err) {
             return false;
         } finally {
+            if (pool_ != null) {
+                pool_.shutdown();
+                pool_ = null;
+            }
             normalize(model);
             dfm.copy(model);
             IDfmMapping fmapping = mapping(model, false, false);
+            fmapping_ = fmapping;
             IReadDataBlock mp = fmapping.parameters();
             IReadDataBlock up = min_.getResult().getParameters();
             factors_ = new DataBlock(mp.getLength());
@@ -265,6 +433,13 @@ public class DfmEstimator implements IDfmEstimator {
 
     @Override
     public Matrix getHessian() {
+        if (information_ == NumericalProcessingSpec.Information.OuterProduct && fmapping_ != null) {
+            // computed directly for the parameters of the final mapping
+            Matrix opg = new DfmInformation(fmapping_).compute(mdata_);
+            if (opg != null) {
+                return opg;
+            }
+        }
         Matrix h = min_.getCurvature();
         if (h != null && !isLogLikelihood()) {
             // we have to correct the hessian 
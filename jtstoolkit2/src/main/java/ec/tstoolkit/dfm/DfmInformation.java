@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.dfm;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.data.IReadDataBlock;
+import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.maths.matrices.SymmetricMatrix;
+import ec.tstoolkit.mssf2.IMSsf;
+import ec.tstoolkit.mssf2.IMSsfData;
+import ec.tstoolkit.mssf2.MFilter;
+import ec.tstoolkit.mssf2.MLikelihoodContributions;
+
+/**
+ * Outer product of the gradients (BHHH) estimate of the information matrix of
+ * the concentrated log-likelihood of a dynamic factor model, for the
+ * parameters of a given mapping.
+ *
+ * The gradients are the contributions of the periods to the score, obtained
+ * from the prediction error decomposition of the likelihood (see
+ * MLikelihoodContributions). When the variances of the model are multiplied
+ * by a scale factor s, the log-likelihood of the period t is (up to a
+ * constant) -.5*(n(t)*log(s) + ldet(t) + ssq(t)/s). Its derivatives with
+ * respect to the parameters are computed by central differences of the
+ * prediction errors and of their variances (two runs of the filter by
+ * parameter); its derivative with respect to s is analytic. The scale factor,
+ * which is concentrated out of the likelihood, is then removed from the outer
+ * product (Schur complement).
+ *
+ * @author Jean Palate
+ */
+public class DfmInformation {
+
+    private final IDfmMapping mapping_;
+
+    /**
+     *
+     * @param mapping The mapping that defines the parameters
+     */
+    public DfmInformation(IDfmMapping mapping) {
+        mapping_ = mapping;
+    }
+
+    /**
+     * Computes the information matrix at the current parameters of the
+     * mapping
+     *
+     * @param data
+     * @return The information matrix or null if it can't be computed
+     */
+    public Matrix compute(IMSsfData data) {
+        return compute(mapping_.parameters(), data);
+    }
+
+    /**
+     * Computes the information matrix at the given parameters
+     *
+     * @param p
+     * @param data
+     * @return The information matrix or null if it can't be computed
+     */
+    public Matrix compute(IReadDataBlock p, IMSsfData data) {
+        MLikelihoodContributions c0 = contributions(p, data);
+        if (c0 == null) {
+            return null;
+        }
+        int n = c0.getCount(), np = p.getLength();
+        double ssq = 0;
+        int nobs = 0;
+        for (int t = 0; t < n; ++t) {
+            ssq += c0.getSsqErr(t);
+            nobs += c0.getObsCount(t);
+        }
+        if (nobs == 0) {
+            return null;
+        }
+        // concentrated scale factor
+        double s = ssq / nobs;
+        // contributions of the periods to the score (parameters, scale factor)
+        Matrix g = new Matrix(n, np + 1);
+        for (int j = 0; j < np; ++j) {
+            double h = mapping_.epsilon(p, j) * Math.max(1, Math.abs(p.get(j)));
+            MLikelihoodContributions cu = contributions(move(p, j, h), data),
+                    cl = contributions(move(p, j, -h), data);
+            MLikelihoodContributions c1, c2;
+            double dh;
+            if (cu != null && cl != null) {
+                c1 = cu;
+                c2 = cl;
+                dh = 2 * h;
+            } else if (cu != null) {
+                c1 = cu;
+                c2 = c0;
+                dh = h;
+            } else if (cl != null) {
+                c1 = c0;
+                c2 = cl;
+                dh = h;
+            } else {
+                return null;
+            }
+            DataBlock col = g.column(j);
+            for (int t = 0; t < n; ++t) {
+                double dldet = (c1.getLogDeterminant(t) - c2.getLogDeterminant(t)) / dh;
+                double dssq = (c1.getSsqErr(t) - c2.getSsqErr(t)) / dh;
+                col.set(t, -.5 * (dldet + dssq / s));
+            }
+        }
+        DataBlock col = g.column(np);
+        for (int t = 0; t < n; ++t) {
+            col.set(t, -.5 * (c0.getObsCount(t) / s - c0.getSsqErr(t) / (s * s)));
+        }
+        Matrix opg = SymmetricMatrix.XtX(g);
+        Matrix info = new Matrix(opg.subMatrix(0, np, 0, np));
+        double gss = opg.get(np, np);
+        if (gss > 0) {
+            for (int i = 0; i < np; ++i) {
+                double gis = opg.get(i, np);
+                for (int j = 0; j < np; ++j) {
+                    info.set(i, j, info.get(i, j) - gis * opg.get(j, np) / gss);
+                }
+            }
+        }
+        return info;
+    }
+
+    private MLikelihoodContributions contributions(IReadDataBlock p, IMSsfData data) {
+        if (!mapping_.checkBoundaries(p)) {
+            return null;
+        }
+        try {
+            IMSsf ssf = mapping_.map(p);
+            MLikelihoodContributions c = new MLikelihoodContributions();
+            return new MFilter().process(ssf, data, c) ? c : null;
+        } catch (RuntimeException err) {
+            return null;
+        }
+    }
+
+    private static DataBlock move(IReadDataBlock p, int j, double h) {
+        DataBlock np = new DataBlock(p);
+        np.add(j, h);
+        return np;
+    }
+}
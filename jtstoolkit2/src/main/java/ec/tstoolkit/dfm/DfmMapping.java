@@ -20,6 +20,7 @@ import ec.tstoolkit.data.DataBlock;
 import ec.tstoolkit.data.IDataBlock;
 import ec.tstoolkit.data.IReadDataBlock;
 import ec.tstoolkit.dfm.DynamicFactorModel.MeasurementDescriptor;
+import ec.tstoolkit.eco.Likelihood;
 import ec.tstoolkit.maths.Complex;
 import ec.tstoolkit.maths.matrices.IEigenSystem;
 import ec.tstoolkit.maths.matrices.Matrix;
@@ -28,12 +29,14 @@ import ec.tstoolkit.maths.matrices.MatrixException;
 import ec.tstoolkit.maths.matrices.SymmetricMatrix;
 import ec.tstoolkit.maths.realfunctions.ParamValidation;
 import ec.tstoolkit.mssf2.IMSsf;
+import ec.tstoolkit.mssf2.IMSsfData;
+import ec.tstoolkit.mssf2.IMSsfScore;
 
 /**
  *
  * @author Jean Palate
  */
-public class DfmMapping implements IDfmMapping {
+public class DfmMapping implements IDfmMapping, IMSsfScore<IMSsf> {
 
     static final double EPS = 1e-5;
 
@@ -282,6 +285,71 @@ public class DfmMapping implements IDfmMapping {
         return p;
     }
 
+    /**
+     * Analytic score (see DfmScore). The likelihood is concentrated: the
+     * actual variances of the model are the variances generated by the
+     * parameters multiplied by the scaling factor (ll.getSigma())
+     *
+     * @param mssf
+     * @param p
+     * @param data
+     * @param ll
+     * @return
+     */
+    @Override
+    public IReadDataBlock score(IMSsf mssf, IReadDataBlock p, IMSsfData data, Likelihood ll) {
+        DynamicFactorModel m = ((DynamicFactorModel.Ssf) mssf).getModel().clone();
+        double sig2 = ll.getSigma();
+        m.rescaleVariances(sig2);
+        DfmScore score = new DfmScore(m);
+        if (!score.compute(data)) {
+            return null;
+        }
+        DataBlock g = new DataBlock(np);
+        DataBlock l = loadings(g);
+        DataBlock mv = mvars(g);
+        if (l != null) {
+            double[][] dc = score.getLoadingsDerivatives();
+            double[] dv = score.getVariancesDerivatives();
+            IReadDataBlock pmv = mvars(p);
+            int i0 = 0, j0 = 0;
+            int n = 0;
+            for (MeasurementDescriptor desc : template.getMeasurements()) {
+                for (int k = 0; k < nb; ++k) {
+                    if (!Double.isNaN(desc.coeff[k]) && (mmax == null || n != mmax[k])) {
+                        l.set(i0++, dc[n][k]);
+                    }
+                }
+                if (n != ivmax) {
+                    // var = sig2 * x * x
+                    mv.set(j0, 2 * sig2 * pmv.get(j0) * dv[n]);
+                    ++j0;
+                }
+                ++n;
+            }
+        }
+        DataBlock tv = tvars(g), vp = vparams(g);
+        if (tv != null) {
+            vp.copyFrom(score.getVarDerivatives().internalStorage(), 0);
+            // covar = sig2 * L L', d(ll)/dL = 2 * sig2 * G L
+            IReadDataBlock ptv = tvars(p);
+            Matrix L = new Matrix(nb, nb);
+            int i0 = 0;
+            for (int i = 0; i < nb; ++i) {
+                L.row(i).range(0, i + 1).copy(ptv.rextract(i0, i + 1));
+                i0 += i + 1;
+            }
+            Matrix GL = score.getCovarDerivatives().times(L);
+            i0 = 0;
+            for (int i = 0; i < nb; ++i) {
+                for (int j = 0; j <= i; ++j) {
+                    tv.set(i0++, 2 * sig2 * GL.get(i, j));
+                }
+            }
+        }
+        return g;
+    }
+
     @Override
     public boolean checkBoundaries(IReadDataBlock inparams) {
         // check the stability of VAR
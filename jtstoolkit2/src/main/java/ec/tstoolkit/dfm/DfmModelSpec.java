@@ -38,10 +38,12 @@ import java.util.Objects;
  */
 public class DfmModelSpec implements IProcSpecification, Cloneable {
 
-    public static final String VSPEC = "var", MSPEC = "measurement", MSPECS = "measurement*", FHORIZON = "fhorizon", CALENDAR = "calendar";
+    public static final String VSPEC = "var", MSPEC = "measurement", MSPECS = "measurement*", FHORIZON = "fhorizon", CALENDAR = "calendar",
+            MAPPEDSTORAGE = "mappedstorage";
     private VarSpec vspec;
     private List<MeasurementSpec> mspecs = new ArrayList<>();
     private int fh;
+    private boolean mappedStorage;
 
     private static final int DEF_FH = 12;
 
@@ -64,6 +66,20 @@ public class DfmModelSpec implements IProcSpecification, Cloneable {
         this.fh = fh;
     }
 
+    /**
+     * The variances of the filtered/smoothed states are kept in memory-mapped
+     * temporary files instead of the heap (for long samples)
+     *
+     * @return
+     */
+    public boolean isMappedStorage() {
+        return mappedStorage;
+    }
+
+    public void setMappedStorage(final boolean mapped) {
+        mappedStorage = mapped;
+    }
+
     public VarSpec getVarSpec() {
         return vspec;
     }
@@ -140,6 +156,9 @@ public class DfmModelSpec implements IProcSpecification, Cloneable {
         if (verbose || fh != DEF_FH) {
             info.add(FHORIZON, fh);
         }
+        if (verbose || mappedStorage) {
+            info.add(MAPPEDSTORAGE, mappedStorage);
+        }
         
         return info;
     }
@@ -165,6 +184,10 @@ public class DfmModelSpec implements IProcSpecification, Cloneable {
         if (f != null) {
             fh = f;
         }
+        Boolean mapped = info.get(MAPPEDSTORAGE, Boolean.class);
+        if (mapped != null) {
+            mappedStorage = mapped;
+        }
 
         return true;
     }
@@ -182,7 +205,7 @@ public class DfmModelSpec implements IProcSpecification, Cloneable {
     }
 
     public boolean equals(DfmModelSpec spec) {
-        if (spec.fh != fh) {
+        if (spec.fh != fh || spec.mappedStorage != mappedStorage) {
             return false;
         }
         if (!vspec.equals(spec.vspec)) {
@@ -333,6 +356,7 @@ public class DfmModelSpec implements IProcSpecification, Cloneable {
         VarSpec.fillDictionary(InformationSet.item(prefix, VSPEC), dic);
         MeasurementSpec.fillDictionary(InformationSet.item(prefix, MSPECS), dic);
         dic.put(InformationSet.item(prefix, FHORIZON), Integer.class);
+        dic.put(InformationSet.item(prefix, MAPPEDSTORAGE), Boolean.class);
     }
 
 }
@@ -0,0 +1,419 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.dfm;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.dfm.DynamicFactorModel.MeasurementDescriptor;
+import ec.tstoolkit.eco.Likelihood;
+import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.timeseries.information.TsInformationSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Multi-start estimation of a dynamic factor model. Independent estimations
+ * (DfmEstimator) are started from the given model and from random
+ * perturbations of it (loadings, variances, VAR parameters and covariance of
+ * the shocks). They run concurrently and the model with the highest
+ * likelihood is retained.
+ *
+ * When abandons are enabled (margin >= 0), all the estimations run at the
+ * same time and they wait for each other at the end of each cycle of their
+ * iterations. An estimation is abandoned when its likelihood at the end of
+ * a cycle is lower than the highest likelihood of the estimations at the end
+ * of the same cycle (or at their end, if they have already converged) minus
+ * the margin. The bounds don't depend on the timing of the concurrent
+ * estimations, so that the results are reproducible.
+ *
+ * The estimation from the given model uses the template itself (and thus the
+ * hooks of its minimizer); the other ones use copies of it.
+ *
+ * @author Jean Palate
+ */
+public class DfmMultiStartEstimator implements IDfmEstimator {
+
+    public static final int DEF_NSTARTS = 4;
+    public static final double DEF_PERTURBATION = .2, DEF_MARGIN = 10;
+    private static final int MAXSHRINK = 20;
+
+    private final DfmEstimator template_;
+    private int nstarts_ = DEF_NSTARTS;
+    private int parallelism_ = Math.min(DEF_NSTARTS, Runtime.getRuntime().availableProcessors());
+    private double perturbation_ = DEF_PERTURBATION, margin_ = DEF_MARGIN;
+    private long seed_;
+    private DfmEstimator.IAbandonCriterion cancel_;
+    private DfmEstimator best_;
+    private int ibest_ = -1;
+    private Likelihood[] lls_;
+
+    /**
+     *
+     * @param template The estimator that defines the settings of the
+     * estimations. It is used for the estimation from the given model.
+     */
+    public DfmMultiStartEstimator(DfmEstimator template) {
+        template_ = template;
+    }
+
+    public int getStartsCount() {
+        return nstarts_;
+    }
+
+    /**
+     * Number of estimations (including the estimation from the given model)
+     *
+     * @param n
+     */
+    public void setStartsCount(int n) {
+        nstarts_ = Math.max(1, n);
+    }
+
+    public int getParallelism() {
+        return parallelism_;
+    }
+
+    /**
+     * Number of estimations that run concurrently when the abandons are
+     * disabled. Otherwise, all the estimations run at the same time
+     *
+     * @param n
+     */
+    public void setParallelism(int n) {
+        parallelism_ = Math.max(1, n);
+    }
+
+    public double getPerturbation() {
+        return perturbation_;
+    }
+
+    /**
+     * Relative size of the random perturbations of the starting models
+     *
+     * @param p
+     */
+    public void setPerturbation(double p) {
+        perturbation_ = p;
+    }
+
+    public double getAbandonMargin() {
+        return margin_;
+    }
+
+    /**
+     * An estimation is abandoned when its log-likelihood at the end of a
+     * cycle is lower than the highest log-likelihood of the estimations at the
+     * end of the same cycle minus this margin. A negative value disables the
+     * abandons (and the synchronization of the estimations)
+     *
+     * @param margin
+     */
+    public void setAbandonMargin(double margin) {
+        margin_ = margin;
+    }
+
+    public long getSeed() {
+        return seed_;
+    }
+
+    public DfmEstimator.IAbandonCriterion getCancelCriterion() {
+        return cancel_;
+    }
+
+    /**
+     * Criterion checked by all the estimations at the end of each cycle of
+     * their iterations (for instance to forward a cancellation by the
+     * user). When it is met, all the estimations are stopped and the
+     * multi-start estimation fails
+     *
+     * @param cancel
+     */
+    public void setCancelCriterion(DfmEstimator.IAbandonCriterion cancel) {
+        cancel_ = cancel;
+    }
+
+    /**
+     * Seed of the random perturbations. The i-th start uses the seed + i, so
+     * that the results are reproducible
+     *
+     * @param seed
+     */
+    public void setSeed(long seed) {
+        seed_ = seed;
+    }
+
+    /**
+     *
+     * @return The estimator of the retained model
+     */
+    public DfmEstimator getBestEstimator() {
+        return best_;
+    }
+
+    /**
+     *
+     * @return The index of the start of the retained model (0 for the given
+     * model)
+     */
+    public int getBestStart() {
+        return ibest_;
+    }
+
+    /**
+     *
+     * @return The likelihoods of the different starts (null for the failed or
+     * abandoned estimations)
+     */
+    public Likelihood[] getLikelihoods() {
+        return lls_;
+    }
+
+    public Likelihood geLikelihood() {
+        return best_ == null ? null : best_.geLikelihood();
+    }
+
+    @Override
+    public boolean estimate(final DynamicFactorModel dfm, final TsInformationSet input) {
+        best_ = null;
+        ibest_ = -1;
+        lls_ = new Likelihood[nstarts_];
+        Barrier barrier = new Barrier(nstarts_);
+        DfmEstimator[] estimators = new DfmEstimator[nstarts_];
+        DynamicFactorModel[] models = new DynamicFactorModel[nstarts_];
+        for (int i = 0; i < nstarts_; ++i) {
+            models[i] = i == 0 ? dfm.clone() : perturb(dfm, new Random(seed_ + i));
+            estimators[i] = i == 0 ? template_ : template_.exemplar();
+        }
+        DfmEstimator.IAbandonCriterion tcriterion = template_.getAbandonCriterion();
+        for (int i = 0; i < nstarts_; ++i) {
+            estimators[i].setAbandonCriterion(barrier.criterion(i));
+        }
+        try {
+            // the synchronized estimations must all run at the same time
+            if (!run(estimators, models, input, barrier, margin_ >= 0 ? nstarts_ : parallelism_)) {
+                return false;
+            }
+        } finally {
+            template_.setAbandonCriterion(tcriterion);
+        }
+        double llmax = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < nstarts_; ++i) {
+            if (lls_[i] != null) {
+                double ll = lls_[i].getLogLikelihood();
+                if (!Double.isNaN(ll) && ll > llmax) {
+                    llmax = ll;
+                    ibest_ = i;
+                }
+            }
+        }
+        // last check of the cancellation (the estimations may have ended
+        // before the end of a cycle)
+        if (ibest_ < 0 || barrier.isCancelled()
+                || (cancel_ != null && cancel_.abandon(llmax))) {
+            ibest_ = -1;
+            return false;
+        }
+        best_ = estimators[ibest_];
+        dfm.copy(models[ibest_]);
+        return true;
+    }
+
+    /**
+     * Runs concurrently the estimations and stores the likelihoods of the
+     * successful ones
+     *
+     * @param nthreads Number of estimations that run at the same time
+     * @return False if the processing has been interrupted
+     */
+    private boolean run(final DfmEstimator[] estimators, final DynamicFactorModel[] models,
+            final TsInformationSet input, final Barrier barrier, int nthreads) {
+        List<Callable<Boolean>> tasks = new ArrayList<>(nstarts_);
+        for (int i = 0; i < nstarts_; ++i) {
+            final int cur = i;
+            tasks.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    boolean ok = false;
+                    DfmEstimator e = estimators[cur];
+                    try {
+                        ok = e.estimate(models[cur], input) && !e.isAbandoned() && e.geLikelihood() != null;
+                        return ok;
+                    } catch (RuntimeException err) {
+                        return false;
+                    } finally {
+                        barrier.finish(cur, ok ? e.geLikelihood().getLogLikelihood() : Double.NaN);
+                    }
+                }
+            });
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(nthreads, nstarts_)));
+        try {
+            List<Future<Boolean>> rslts = pool.invokeAll(tasks);
+            for (int i = 0; i < nstarts_; ++i) {
+                if (rslts.get(i).get()) {
+                    lls_[i] = estimators[i].geLikelihood();
+                }
+            }
+            return true;
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException err) {
+            return false;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    public Matrix getHessian() {
+        return best_ == null ? null : best_.getHessian();
+    }
+
+    @Override
+    public DataBlock getGradient() {
+        return best_ == null ? null : best_.getGradient();
+    }
+
+    /**
+     * Random (multiplicative) perturbation of the model. The VAR parameters
+     * are shrunk till the model is valid
+     */
+    private DynamicFactorModel perturb(DynamicFactorModel dfm, Random rnd) {
+        DynamicFactorModel m = dfm.clone();
+        for (MeasurementDescriptor desc : m.getMeasurements()) {
+            for (int i = 0; i < desc.coeff.length; ++i) {
+                if (!Double.isNaN(desc.coeff[i])) {
+                    desc.coeff[i] *= Math.exp(perturbation_ * rnd.nextGaussian());
+                }
+            }
+            desc.var *= Math.exp(perturbation_ * rnd.nextGaussian());
+        }
+        DynamicFactorModel.TransitionDescriptor tdesc = m.getTransition();
+        tdesc.covar.mul(Math.exp(perturbation_ * rnd.nextGaussian()));
+        double[] a = tdesc.varParams.internalStorage();
+        for (int i = 0; i < a.length; ++i) {
+            a[i] *= 1 + perturbation_ * rnd.nextGaussian();
+        }
+        for (int k = 0; k < MAXSHRINK && !m.isValid(); ++k) {
+            tdesc.varParams.mul(.9);
+        }
+        if (!m.isValid()) {
+            tdesc.varParams.copy(dfm.getTransition().varParams);
+        }
+        return m;
+    }
+
+    /**
+     * Synchronization of the estimations at the end of their cycles, abandons
+     * and cancellation. The k-th cycle of an estimation ends when all the
+     * other estimations have ended their k-th cycle or have finished; the
+     * bound of the cycle is then computed from their log-likelihoods
+     */
+    private class Barrier {
+
+        // log-likelihoods of the estimations at the end of each cycle
+        private final List<List<Double>> cycles;
+        // final log-likelihoods (NaN for the failed or abandoned estimations)
+        private final double[] last;
+        private final boolean[] done;
+        private boolean cancelled;
+
+        private Barrier(int n) {
+            cycles = new ArrayList<>(n);
+            for (int i = 0; i < n; ++i) {
+                cycles.add(new ArrayList<Double>());
+            }
+            last = new double[n];
+            done = new boolean[n];
+        }
+
+        private DfmEstimator.IAbandonCriterion criterion(final int start) {
+            return new DfmEstimator.IAbandonCriterion() {
+                @Override
+                public boolean abandon(double ll) {
+                    return Barrier.this.abandon(start, ll);
+                }
+            };
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private synchronized void finish(int start, double ll) {
+            done[start] = true;
+            last[start] = ll;
+            notifyAll();
+        }
+
+        private synchronized boolean abandon(int start, double ll) {
+            if (!cancelled && cancel_ != null && cancel_.abandon(ll)) {
+                cancelled = true;
+                notifyAll();
+            }
+            if (cancelled) {
+                return true;
+            }
+            if (margin_ < 0) {
+                return false;
+            }
+            List<Double> cur = cycles.get(start);
+            int k = cur.size();
+            cur.add(ll);
+            notifyAll();
+            try {
+                while (!cancelled && !isCompleted(k)) {
+                    wait();
+                }
+            } catch (InterruptedException err) {
+                Thread.currentThread().interrupt();
+                cancelled = true;
+                notifyAll();
+            }
+            if (cancelled) {
+                return true;
+            }
+            return !Double.isNaN(ll) && ll < bound(k);
+        }
+
+        private boolean isCompleted(int k) {
+            for (int i = 0; i < done.length; ++i) {
+                if (!done[i] && cycles.get(i).size() <= k) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private double bound(int k) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < done.length; ++i) {
+                List<Double> cur = cycles.get(i);
+                double ll = cur.size() > k ? cur.get(k) : last[i];
+                if (!Double.isNaN(ll) && ll > max) {
+                    max = ll;
+                }
+            }
+            return max - margin_;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import ec.tstoolkit.maths.matrices.Matrix;
 import ec.tstoolkit.maths.matrices.SymmetricMatrix;
 import ec.tstoolkit.mssf2.IMSsf;
 import ec.tstoolkit.mssf2.MFilter;
+import ec.tstoolkit.mssf2.MFilterCheckpoint;
 import ec.tstoolkit.mssf2.MFilteringResults;
 import ec.tstoolkit.mssf2.MSmoother;
 import ec.tstoolkit.mssf2.MSmoothingResults;
@@ -45,6 +46,9 @@ import java.util.List;
 public class DfmNews {
 
     private MSmoothingResults srslts0_, srslts1_, srslts01_;
+    // filtering of the old data, shared with the revised and new data
+    private MFilteringResults frslts_;
+    private MFilterCheckpoint checkpoint_;
     private final DynamicFactorModel model_;
     private DynamicFactorModel modelex_;
     private DynamicFactorModel modelexRev_;
@@ -53,9 +57,12 @@ public class DfmNews {
     private TsInformationUpdates updates_;
     private Matrix mcov_, lcov_;
     private Matrix mcovRev_, lcovRev_;
+    // covariances between the extended states and the updates (V X)
+    private Matrix wnews_, wrev_;
     private TsPeriod first_, last_;
 
     private int ext_ = 2;
+    private boolean checkpointing_ = true;
     /**
      * "Complete" domain, which is the union of the domains of the old
      * information set and of the new information set
@@ -108,6 +115,21 @@ public class DfmNews {
         return rDomain_;
     }
 
+    /**
+     * Indicates whether the filtering of the revised and new data is restarted
+     * from a checkpoint of the filtering of the old data (default) or computed
+     * from the beginning. Both solutions give the same results.
+     *
+     * @return
+     */
+    public boolean isUsingCheckpoint() {
+        return checkpointing_;
+    }
+
+    public void setUsingCheckpoint(boolean checkpointing) {
+        checkpointing_ = checkpointing;
+    }
+
     /**
      * Computes the news between two consecutive information set
      *
@@ -141,15 +163,21 @@ public class DfmNews {
 
         Matrix M = revisedset_.generateMatrix(fullDomain_);
         Matrix M_old = oldset_.generateMatrix(fullDomain_);
+        // the filter is only restarted from the first period that contains
+        // updates (news or revisions)
+        int common = commonPeriods(M_old, newset_.generateMatrix(fullDomain_));
 
-        if (!smoothOldData(M_old)) {
+        if (!smoothOldData(M_old, common)) {
             return false;
         }
-        
-        if(!smoothRevData(M)) {
+
+        if (commonPeriods(M_old, M) == M.getRowsCount()) {
+            // no revision
+            srslts01_ = srslts0_;
+        } else if (!smoothRevData(M)) {
             return false;
         }
-        
+
         updateNews();
 
         if (!smoothNewDataEx(M)) {
@@ -253,19 +281,34 @@ public class DfmNews {
     /**
      * Computes the smoothed states corresponding to the old data set. The
      * variance of the smoothed states are not computed. The states are saved
-     * till the period corresponding to the domain of the news.
+     * till the period corresponding to the domain of the news. The state of
+     * the filter is saved at the first period that contains updates, so that
+     * the filtering of the revised and new data can be restarted from there.
      *
      * @param M
+     * @param common Number of periods without updates
      */
-    private boolean smoothOldData(Matrix M) {
+    private boolean smoothOldData(Matrix M, int common) {
         MultivariateSsfData ssfData = new MultivariateSsfData(M.subMatrix().transpose(), null);
+        int last = fullDomain_.search(iDomain0_.getStart());
+        frslts_ = new MFilteringResults();
+        frslts_.getVarianceFilter().setSavingK(true);
+        frslts_.getVarianceFilter().setSavingP(true);
+        frslts_.setStartSaving(last);
+        MFilter filter = new MFilter();
+        if (checkpointing_) {
+            filter.setCheckpointPosition(common);
+        }
+        if (!filter.process(ssf_, ssfData, frslts_)) {
+            return false;
+        }
+        checkpoint_ = checkpointing_ ? filter.getCheckpoint() : null;
         MSmoother smoother = new MSmoother();
         srslts0_ = new MSmoothingResults();
-        int last = fullDomain_.search(iDomain0_.getStart());
         srslts0_.setSavingStart(last);
         smoother.setStopPosition(last);
         smoother.setCalcVariance(false);
-        return smoother.process(ssf_, ssfData, srslts0_);
+        return smoother.process(ssf_, ssfData, frslts_, srslts0_);
     }
 
     private boolean smoothNewData(Matrix M) {
@@ -276,9 +319,15 @@ public class DfmNews {
         srslts1_.setSavingStart(last);
         smoother.setStopPosition(last);
         smoother.setCalcVariance(false);
-        return smoother.process(ssf_, ssfData, srslts1_);
+        // the shared filtering results are only saved from the stop position
+        // of the old data
+        if (frslts_ != null && frslts_.getStartSaving() <= last && resumeFilter(ssfData)) {
+            return smoother.process(ssf_, ssfData, frslts_, srslts1_);
+        } else {
+            return smoother.process(ssf_, ssfData, srslts1_);
+        }
     }
-    
+
     private boolean smoothRevData(Matrix M) {
         MultivariateSsfData ssfData = new MultivariateSsfData(M.subMatrix().transpose(), null);
         MSmoother smoother = new MSmoother();
@@ -287,7 +336,50 @@ public class DfmNews {
         srslts01_.setSavingStart(last);
         smoother.setStopPosition(last);
         smoother.setCalcVariance(false);
-        return smoother.process(ssf_, ssfData, srslts01_);
+        if (resumeFilter(ssfData)) {
+            return smoother.process(ssf_, ssfData, frslts_, srslts01_);
+        } else {
+            return smoother.process(ssf_, ssfData, srslts01_);
+        }
+    }
+
+    /**
+     * Filters the data from the checkpoint of the old data. The filtering
+     * results of the previous periods, which are the same for all the data
+     * sets, are re-used.
+     *
+     * @param ssfData
+     * @return False if there is no checkpoint or if the stored results can't
+     * be re-used (the data must be filtered from the beginning)
+     */
+    private boolean resumeFilter(MultivariateSsfData ssfData) {
+        if (checkpoint_ == null) {
+            return false;
+        }
+        MFilter filter = new MFilter();
+        return filter.resume(ssf_, ssfData, frslts_, checkpoint_);
+    }
+
+    /**
+     * Number of leading periods (rows) that are identical in both matrices
+     * (missing values included)
+     *
+     * @param M0
+     * @param M1
+     * @return
+     */
+    private static int commonPeriods(Matrix M0, Matrix M1) {
+        int n = Math.min(M0.getRowsCount(), M1.getRowsCount());
+        int m = Math.min(M0.getColumnsCount(), M1.getColumnsCount());
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < m; ++j) {
+                double x0 = M0.get(i, j), x1 = M1.get(i, j);
+                if (x0 != x1 && !(Double.isNaN(x0) && Double.isNaN(x1))) {
+                    return i;
+                }
+            }
+        }
+        return n;
     }
 
     /**
@@ -386,93 +478,73 @@ public class DfmNews {
     }
 
     private void computeNewsCovariance() {
-        TsFrequency freq = last_.getFrequency();
         List<Update> updates = updates_.news();
-        int n = updates.size();
-        int c = model_.getBlockLength();
-        int xc = modelex_.getBlockLength();
-        int nb = model_.getFactorsCount();
-        lcov_ = new Matrix(n, n);
-        int d = ssf_.getStateDim();
-        Matrix V = new Matrix(d, d);
-        DataBlockIterator vcols = V.columns();
-        DataBlock vcol = vcols.getData();
-        DataBlock tmp = new DataBlock(d);
-        for (int i = 0; i < n; ++i) {
-            Update iupdate = updates.get(i);
-            int istart = last_.minus(iupdate.period.lastPeriod(freq));
-            for (int j = 0; j <= i; ++j) {
-                Update jupdate = updates.get(j);
-                // copy the right covariance
-                int jstart = last_.minus(jupdate.period.lastPeriod(freq));
-                V.set(0);
-                for (int r = 0; r < nb; ++r) {
-                    for (int s = 0; s < nb; ++s) {
-                        V.subMatrix(r * c, r * c + c, s * c, s * c + c).copy(
-                                mcov_.subMatrix(r * xc + istart, r * xc + istart + c,
-                                        s * xc + jstart, s * xc + jstart + c));
-                    }
-                }
-
-                tmp.set(0);
-                vcols.begin();
-                do {
-                    tmp.set(vcols.getPosition(), ssf_.ZX(0, iupdate.series, vcol));
-                } while (vcols.next());
-                double q = ssf_.ZX(0, jupdate.series, tmp);
-                if (i == j) {
-                    q += model_.getMeasurements().get(iupdate.series).var;
-                }
-                lcov_.set(i, j, q);
-            }
-        }
-        SymmetricMatrix.fromLower(lcov_);
-        SymmetricMatrix.lcholesky(lcov_, MFilter.Zero);
+        Matrix X = loadings(updates, modelex_.getBlockLength());
+        wnews_ = mcov_.times(X);
+        lcov_ = covariance(updates, X, wnews_);
     }
 
     private void computeRevisionsCovariance() {
-        TsFrequency freq = last_.getFrequency();
         List<Update> updates = updates_.revisions();
-        int n = updates.size();
+        Matrix X = loadings(updates, modelexRev_.getBlockLength());
+        wrev_ = mcovRev_.times(X);
+        lcovRev_ = covariance(updates, X, wrev_);
+    }
+
+    /**
+     * Loadings of the updates on the extended state: the i-th column contains
+     * the coefficients of the measurement of the i-th update, shifted to the
+     * position of its period in the state (block length xc).
+     */
+    private Matrix loadings(List<Update> updates, int xc) {
+        TsFrequency freq = last_.getFrequency();
+        Matrix Z = measurements();
+        Matrix X = new Matrix(model_.getFactorsCount() * xc, updates.size());
+        for (int i = 0; i < updates.size(); ++i) {
+            Update update = updates.get(i);
+            loading(Z.row(update.series), last_.minus(update.period.lastPeriod(freq)), xc, X.column(i));
+        }
+        return X;
+    }
+
+    private Matrix measurements() {
+        Matrix Z = new Matrix(ssf_.getVarsCount(), ssf_.getStateDim());
+        ssf_.Z(0, Z.subMatrix());
+        return Z;
+    }
+
+    private void loading(DataBlock z, int start, int xc, DataBlock x) {
         int c = model_.getBlockLength();
-        int xc = modelexRev_.getBlockLength();
         int nb = model_.getFactorsCount();
-        lcovRev_ = new Matrix(n, n);
-        int d = ssf_.getStateDim();
-        Matrix V = new Matrix(d, d);
-        DataBlockIterator vcols = V.columns();
-        DataBlock vcol = vcols.getData();
-        DataBlock tmp = new DataBlock(d);
-        for (int i = 0; i < n; ++i) {
-            Update iupdate = updates.get(i);
-            int istart = last_.minus(iupdate.period.lastPeriod(freq));
-            for (int j = 0; j <= i; ++j) {
-                Update jupdate = updates.get(j);
-                // copy the right covariance
-                int jstart = last_.minus(jupdate.period.lastPeriod(freq));
-                V.set(0);
-                for (int r = 0; r < nb; ++r) {
-                    for (int s = 0; s < nb; ++s) {
-                        V.subMatrix(r * c, r * c + c, s * c, s * c + c).copy(
-                                mcovRev_.subMatrix(r * xc + istart, r * xc + istart + c,
-                                        s * xc + jstart, s * xc + jstart + c));
-                    }
-                }
+        for (int r = 0; r < nb; ++r) {
+            x.range(r * xc + start, r * xc + start + c).copy(z.range(r * c, r * c + c));
+        }
+    }
 
-                tmp.set(0);
-                vcols.begin();
-                do {
-                    tmp.set(vcols.getPosition(), ssf_.ZX(0, iupdate.series, vcol));
-                } while (vcols.next());
-                double q = ssf_.ZX(0, jupdate.series, tmp);
-                if (i == j) {
-                    q += model_.getMeasurements().get(iupdate.series).var;
-                }
-                lcovRev_.set(i, j, q);
-            }
+    /**
+     * Cholesky factor of the covariance of the updates, X'VX + H, where W =
+     * VX
+     */
+    private Matrix covariance(List<Update> updates, Matrix X, Matrix W) {
+        Matrix cov = X.transpose().times(W);
+        for (int i = 0; i < updates.size(); ++i) {
+            cov.add(i, i, model_.getMeasurements().get(updates.get(i).series).var);
         }
-        SymmetricMatrix.fromLower(lcovRev_);
-        SymmetricMatrix.lcholesky(lcovRev_, MFilter.Zero);
+        SymmetricMatrix.reinforceSymmetry(cov);
+        SymmetricMatrix.lcholesky(cov, MFilter.Zero);
+        return cov;
+    }
+
+    /**
+     * Covariances between the given series at the given period and the
+     * updates
+     */
+    private DataBlock covariances(int series, TsPeriod p, int xc, Matrix W) {
+        DataBlock x = new DataBlock(W.getRowsCount());
+        loading(measurements().row(series), last_.minus(p), xc, x);
+        DataBlock a = new DataBlock(W.getColumnsCount());
+        a.product(x, W.columns());
+        return a;
     }
 
     /**
@@ -483,6 +555,15 @@ public class DfmNews {
         return mcov_;
     }
 
+    /**
+     *
+     * @return The Cholesky factor (lower triangular) of the covariance matrix
+     * of the news
+     */
+    public Matrix getNewsCovariance() {
+        return lcov_;
+    }
+
     /**
      *
      * @return
@@ -522,39 +603,7 @@ public class DfmNews {
      * @return
      */
     public DataBlock weights(int series, TsPeriod p) {
-        List<Update> updates = updates_.news();
-
-        int n = updates.size();
-        DataBlock a = new DataBlock(n);
-        int c = model_.getBlockLength();
-        int xc = modelex_.getBlockLength();
-        int nb = model_.getFactorsCount();
-        int d = ssf_.getStateDim();
-        Matrix V = new Matrix(d, d);
-        DataBlockIterator vcols = V.columns();
-        DataBlock vcol = vcols.getData();
-        DataBlock tmp = new DataBlock(d);
-        int istart = last_.minus(p);
-        TsFrequency freq = last_.getFrequency();
-        for (int j = 0; j < n; ++j) {
-            Update jupdate = updates.get(j);
-            int jstart = last_.minus(jupdate.period.lastPeriod(freq));
-            V.set(0);
-            for (int r = 0; r < nb; ++r) {
-                for (int s = 0; s < nb; ++s) {
-                    V.subMatrix(r * c, r * c + c, s * c, s * c + c).copy(
-                            mcov_.subMatrix(r * xc + istart, r * xc + istart + c,
-                                    s * xc + jstart, s * xc + jstart + c));
-                }
-            }
-            tmp.set(0);
-            vcols.begin();
-            do {
-                tmp.set(vcols.getPosition(), ssf_.ZX(0, series, vcol));
-            } while (vcols.next());
-            double q = ssf_.ZX(0, jupdate.series, tmp);
-            a.set(j, q);
-        }
+        DataBlock a = covariances(series, p, modelex_.getBlockLength(), wnews_);
         // w = A * (LL')^-1 <-> w(LL')=A
         // B = wL, BL' = A <-> LB'=A'
         LowerTriangularMatrix.rsolve(lcov_, a, MFilter.Zero); // B
@@ -562,39 +611,52 @@ public class DfmNews {
         return a;
     }
 
-    public DataBlock weightsRevisions(int series, TsPeriod p) {
-        List<Update> updates = updates_.revisions();
-        int n = updates.size();
-        DataBlock a = new DataBlock(n);
-        int c = model_.getBlockLength();
-        int xc = modelexRev_.getBlockLength();
-        int nb = model_.getFactorsCount();
-        int d = ssf_.getStateDim();
-        Matrix V = new Matrix(d, d);
-        DataBlockIterator vcols = V.columns();
-        DataBlock vcol = vcols.getData();
-        DataBlock tmp = new DataBlock(d);
-        int istart = last_.minus(p);
-        TsFrequency freq = last_.getFrequency();
-        for (int j = 0; j < n; ++j) {
-            Update jupdate = updates.get(j);
-            int jstart = last_.minus(jupdate.period.lastPeriod(freq));
-            V.set(0);
-            for (int r = 0; r < nb; ++r) {
-                for (int s = 0; s < nb; ++s) {
-                    V.subMatrix(r * c, r * c + c, s * c, s * c + c).copy(
-                            mcovRev_.subMatrix(r * xc + istart, r * xc + istart + c,
-                                    s * xc + jstart, s * xc + jstart + c));
-                }
-            }
-            tmp.set(0);
-            vcols.begin();
+    /**
+     * Weights of the news for several targets, computed in one pass. The i-th
+     * row is identical to weights(series[i], periods[i])
+     *
+     * @param series The series of the targets
+     * @param periods The periods of the targets (same length as series)
+     * @return A matrix with a row for each target and a column for each news
+     */
+    public Matrix weights(int[] series, TsPeriod[] periods) {
+        return weights(series, periods, modelex_.getBlockLength(), wnews_, lcov_);
+    }
+
+    /**
+     * Weights of the revisions for several targets, computed in one pass (see
+     * weights(int[], TsPeriod[]))
+     *
+     * @param series
+     * @param periods
+     * @return A matrix with a row for each target and a column for each
+     * revision
+     */
+    public Matrix weightsRevisions(int[] series, TsPeriod[] periods) {
+        return weights(series, periods, modelexRev_.getBlockLength(), wrev_, lcovRev_);
+    }
+
+    private Matrix weights(int[] series, TsPeriod[] periods, int xc, Matrix W, Matrix L) {
+        Matrix Z = measurements();
+        Matrix X = new Matrix(W.getRowsCount(), series.length);
+        for (int i = 0; i < series.length; ++i) {
+            loading(Z.row(series[i]), last_.minus(periods[i]), xc, X.column(i));
+        }
+        // A = X'VX(upd), w = A * (LL')^-1 (by row)
+        Matrix A = X.transpose().times(W);
+        if (A.getRowsCount() > 0) {
+            DataBlockIterator rows = A.rows();
+            DataBlock row = rows.getData();
             do {
-                tmp.set(vcols.getPosition(), ssf_.ZX(0, series, vcol));
-            } while (vcols.next());
-            double q = ssf_.ZX(0, jupdate.series, tmp);
-            a.set(j, q);
+                LowerTriangularMatrix.rsolve(L, row, MFilter.Zero);
+                LowerTriangularMatrix.lsolve(L, row, MFilter.Zero);
+            } while (rows.next());
         }
+        return A;
+    }
+
+    public DataBlock weightsRevisions(int series, TsPeriod p) {
+        DataBlock a = covariances(series, p, modelexRev_.getBlockLength(), wrev_);
         // w = A * (LL')^-1 <-> w(LL')=A
         // B = wL, BL' = A <-> LB'=A'
         LowerTriangularMatrix.rsolve(lcovRev_, a, MFilter.Zero); // B
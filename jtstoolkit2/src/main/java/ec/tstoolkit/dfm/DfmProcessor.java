@@ -18,10 +18,14 @@ package ec.tstoolkit.dfm;
 
 import ec.tstoolkit.timeseries.information.TsInformationSet;
 import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.mssf2.CollapsedMSsf;
+import ec.tstoolkit.mssf2.IMSmoothingResults;
 import ec.tstoolkit.mssf2.IMSsf;
+import ec.tstoolkit.mssf2.IMSsfData;
 import ec.tstoolkit.mssf2.MFilteringResults;
 import ec.tstoolkit.mssf2.MSmoother;
 import ec.tstoolkit.mssf2.MSmoothingResults;
+import ec.tstoolkit.mssf2.MWorkspace;
 import ec.tstoolkit.mssf2.MultivariateSsfData;
 import ec.tstoolkit.timeseries.simplets.TsData;
 
@@ -33,7 +37,11 @@ public class DfmProcessor implements IDfmProcessor {
 
     private MSmoothingResults srslts_;
     private MFilteringResults frslts_;
-    private boolean bvar_;
+    private boolean bvar_, bcollapsed_, breuse_, bpacked_, bsingle_, bmapped_;
+    private NumericalProcessingSpec.FilterEngine engine_ = NumericalProcessingSpec.FilterEngine.Standard;
+    private MWorkspace ws_;
+    private TsInformationSet input_;
+    private Matrix M_;
 
     private void clear() {
         srslts_ = null;
@@ -48,6 +56,98 @@ public class DfmProcessor implements IDfmProcessor {
         bvar_=bvar;
     }
 
+    public boolean isPackedStorage(){
+        return bpacked_;
+    }
+
+    /**
+     * Stores only the lower triangular part of the variances of the smoothed
+     * states
+     *
+     * @param packed
+     */
+    public void setPackedStorage(boolean packed){
+        bpacked_=packed;
+    }
+
+    public boolean isSinglePrecision(){
+        return bsingle_;
+    }
+
+    /**
+     * Stores the variances of the smoothed states in single precision (with
+     * packed storage). Should only be used for displayed results
+     *
+     * @param single
+     */
+    public void setSinglePrecision(boolean single){
+        bsingle_=single;
+    }
+
+    public boolean isMappedStorage(){
+        return bmapped_;
+    }
+
+    /**
+     * Stores the variances of the filtered and smoothed states in a
+     * memory-mapped temporary file instead of the heap (long samples)
+     *
+     * @param mapped
+     */
+    public void setMappedStorage(boolean mapped){
+        bmapped_=mapped;
+    }
+
+    public boolean isReusingWorkspace(){
+        return breuse_;
+    }
+
+    /**
+     * Re-uses the same storage (filter and smoother workspace, data) between
+     * successive calls (for instance in the EM algorithm). The results of a
+     * call are then overwritten by the next call.
+     *
+     * @param reuse
+     */
+    public void setReusingWorkspace(boolean reuse){
+        breuse_=reuse;
+        if (! reuse){
+            ws_=null;
+            input_=null;
+            M_=null;
+        }
+    }
+
+    public NumericalProcessingSpec.FilterEngine getFilterEngine(){
+        return engine_;
+    }
+
+    /**
+     * Filter used before the smoothing. The workspace is only used by the
+     * standard filter
+     *
+     * @param engine
+     */
+    public void setFilterEngine(NumericalProcessingSpec.FilterEngine engine){
+        engine_=engine;
+    }
+
+    public boolean isCollapsed(){
+        return bcollapsed_;
+    }
+
+    /**
+     * Smoothes the collapsed model (see CollapsedMSsf), which gives the same
+     * states and the same likelihood at a lower cost when the number of
+     * series is large. The filtering results are then related to the
+     * collapsed model, except for the likelihood and the filtered states.
+     *
+     * @param collapsed
+     */
+    public void setCollapsed(boolean collapsed){
+        bcollapsed_=collapsed;
+    }
+
     /**
      * Retrieves the smoothing results
      *
@@ -65,18 +165,66 @@ public class DfmProcessor implements IDfmProcessor {
 
     @Override
     public boolean process(DynamicFactorModel model, TsInformationSet input) {
+        return process(model, input, null);
+    }
+
+    /**
+     * Smoothes the model without storing the smoothing results: the smoothed
+     * states (and their variances if isCalcVariance()) are passed to rslts
+     * period by period. getSmoothingResults() returns then null.
+     *
+     * @param model
+     * @param input
+     * @param rslts The receiver of the smoothed states. If null, the usual
+     * smoothing results are computed
+     * @return
+     */
+    public boolean process(DynamicFactorModel model, TsInformationSet input, IMSmoothingResults rslts) {
         try {
             clear();
-            Matrix M = input.generateMatrix(null);
+            Matrix M;
+            if (breuse_ && input == input_) {
+                M = M_;
+            } else {
+                M = input.generateMatrix(null);
+                if (breuse_) {
+                    input_ = input;
+                    M_ = M;
+                }
+            }
             if (M.getColumnsCount() != model.getMeasurementsCount()) {
                 throw new DfmException(DfmException.INCOMPATIBLE_DATA);
             }
             MSmoother smoother = new MSmoother();
-            srslts_ = new MSmoothingResults();
             smoother.setCalcVariance(bvar_);
+            smoother.setUnivariate(engine_ == NumericalProcessingSpec.FilterEngine.Univariate);
+            smoother.setSquareRoot(engine_ == NumericalProcessingSpec.FilterEngine.SquareRoot);
             IMSsf ssf = model.ssfRepresentation();
-            smoother.process(ssf, new MultivariateSsfData(M.subMatrix().transpose(), null), srslts_);
+            IMSsfData data = new MultivariateSsfData(M.subMatrix().transpose(), null);
+            CollapsedMSsf cssf = bcollapsed_ ? CollapsedMSsf.create(ssf, data) : null;
+            if (cssf != null) {
+                ssf = cssf;
+                data = cssf.getData();
+            }
+            if (breuse_) {
+                if (ws_ == null || !ws_.isCompatible(ssf, data)) {
+                    ws_ = MWorkspace.create(ssf, data);
+                }
+                smoother.setWorkspace(ws_);
+            }
+            if (rslts != null) {
+                smoother.process(ssf, data, rslts);
+            } else {
+                srslts_ = breuse_ ? ws_.getSmoothingResults() : new MSmoothingResults();
+                srslts_.setPackedStorage(bpacked_ || bsingle_);
+                srslts_.setSinglePrecision(bsingle_);
+                srslts_.setMappedStorage(bmapped_ && !breuse_);
+                smoother.process(ssf, data, srslts_);
+            }
             frslts_ = smoother.getFilteringResults();
+            if (cssf != null) {
+                cssf.addResiduals(frslts_);
+            }
             return true;
         } catch (Exception err) {
             srslts_ = null;
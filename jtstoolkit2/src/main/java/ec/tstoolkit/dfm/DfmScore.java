@@ -0,0 +1,315 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.dfm;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.dfm.DynamicFactorModel.MeasurementDescriptor;
+import ec.tstoolkit.maths.matrices.LowerTriangularMatrix;
+import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.maths.matrices.MatrixException;
+import ec.tstoolkit.maths.matrices.SymmetricMatrix;
+import ec.tstoolkit.mssf2.IMSmoothingResults;
+import ec.tstoolkit.mssf2.IMSsf;
+import ec.tstoolkit.mssf2.IMSsfData;
+import ec.tstoolkit.mssf2.MSmoother;
+import ec.tstoolkit.var.VarSpec;
+import java.util.List;
+
+/**
+ * Analytic score of the log-likelihood of a dynamic factor model, computed
+ * with one pass of the filter and of the smoother. By the Fisher identity,
+ * the score is the expectation (conditionally on the observations) of the
+ * derivatives of the log-likelihood of the complete data (observations and
+ * states), which only involves the smoothed moments of the states
+ * (Koopman-Shephard).
+ *
+ * The derivatives are computed with respect to the loadings, the variances of
+ * the measurements, the VAR parameters and the covariance of the VAR shocks.
+ *
+ * @author Jean Palate
+ */
+public class DfmScore {
+
+    private final DynamicFactorModel model_;
+    private double[][] dcoeff_;
+    private double[] dvar_;
+    private Matrix dA_, dV_;
+
+    /**
+     *
+     * @param model The model. Its variances should be the actual variances
+     * (not scaled)
+     */
+    public DfmScore(DynamicFactorModel model) {
+        model_ = model;
+    }
+
+    /**
+     * Computes the score for the given data
+     *
+     * @param data
+     * @return
+     */
+    public boolean compute(IMSsfData data) {
+        DynamicFactorModel model = model_;
+        int nl = model.getTransition().nlags;
+        if (model.getBlockLength() == nl) {
+            // the lag-one moments must be moments of the state (see DfmEM2)
+            if (model.getInitialization() == VarSpec.Initialization.UserDefined) {
+                return false;
+            }
+            model = model_.clone();
+            model.setBlockLength(nl + 1);
+        }
+        try {
+            IMSsf ssf = model.ssfRepresentation();
+            boolean zero = model.getInitialization() == VarSpec.Initialization.Zero;
+            Moments moments = new Moments(ssf, data, zero);
+            MSmoother smoother = new MSmoother();
+            if (!smoother.process(ssf, data, moments)) {
+                return false;
+            }
+            return measurements(model, moments) && transition(model, ssf, moments);
+        } catch (MatrixException err) {
+            return false;
+        }
+    }
+
+    /**
+     * Derivatives with respect to the loadings (by measurement, by factor).
+     * The unused factors have a 0 derivative.
+     *
+     * @return
+     */
+    public double[][] getLoadingsDerivatives() {
+        return dcoeff_;
+    }
+
+    /**
+     * Derivatives with respect to the variances of the measurements
+     *
+     * @return
+     */
+    public double[] getVariancesDerivatives() {
+        return dvar_;
+    }
+
+    /**
+     * Derivatives with respect to the VAR parameters (same structure as the
+     * VAR parameters of the transition descriptor)
+     *
+     * @return
+     */
+    public Matrix getVarDerivatives() {
+        return dA_;
+    }
+
+    /**
+     * Symmetric matrix G such that d(ll) = tr(G dV) for any symmetric
+     * perturbation dV of the covariance of the VAR shocks
+     *
+     * @return
+     */
+    public Matrix getCovarDerivatives() {
+        return dV_;
+    }
+
+    /**
+     * The smoothed moments E(a(t)a(t)') = P(t) + a(t)a(t)' are summed over the
+     * periods (the first period is kept aside when it is generated by the
+     * initial variance). The contributions of the measurements are computed
+     * on the fly.
+     */
+    private static class Moments implements IMSmoothingResults {
+
+        private final IMSsf ssf;
+        private final IMSsfData data;
+        private final boolean zero;
+        private Matrix Z, E0, Esum;
+        private DataBlock[] d;
+        private double[] q;
+        private int[] nobs;
+        private DataBlock pz;
+        private int m;
+
+        private Moments(IMSsf ssf, IMSsfData data, boolean zero) {
+            this.ssf = ssf;
+            this.data = data;
+            this.zero = zero;
+        }
+
+        @Override
+        public void prepare(int n, int dim, int v) {
+            Z = new Matrix(v, dim);
+            ssf.Z(0, Z.subMatrix());
+            Esum = new Matrix(dim, dim);
+            E0 = null;
+            d = new DataBlock[v];
+            for (int i = 0; i < v; ++i) {
+                d[i] = new DataBlock(dim);
+            }
+            q = new double[v];
+            nobs = new int[v];
+            pz = new DataBlock(dim);
+            m = 0;
+        }
+
+        @Override
+        public void save(int pos, DataBlock a, Matrix p) {
+            // measurements: d = sum(e*a - P*z'), q = sum(e*e + z*P*z')
+            for (int i = 0; i < d.length; ++i) {
+                if (data.isMissing(i, pos)) {
+                    continue;
+                }
+                DataBlock z = Z.row(i);
+                double e = data.get(i, pos) - z.dot(a);
+                pz.product(z, p.columns());
+                d[i].addAY(e, a);
+                d[i].addAY(-1, pz);
+                q[i] += e * e + z.dot(pz);
+                ++nobs[i];
+            }
+            if (pos == 0 && !zero) {
+                E0 = p.clone();
+                E0.addXaXt(1, a);
+            } else {
+                Esum.subMatrix().add(p.subMatrix());
+                Esum.addXaXt(1, a);
+                ++m;
+            }
+        }
+    }
+
+    private boolean measurements(DynamicFactorModel model, Moments moments) {
+        List<MeasurementDescriptor> mdesc = model.getMeasurements();
+        int c = model.getBlockLength(), nf = model.getFactorsCount();
+        dcoeff_ = new double[mdesc.size()][nf];
+        dvar_ = new double[mdesc.size()];
+        for (int i = 0; i < dvar_.length; ++i) {
+            if (moments.nobs[i] == 0) {
+                continue;
+            }
+            MeasurementDescriptor desc = mdesc.get(i);
+            double h = desc.var;
+            if (h <= 0) {
+                return false;
+            }
+            // ll = -1/2 sum(log(h) + E(y-za)^2/h)
+            dvar_[i] = -.5 * (moments.nobs[i] - moments.q[i] / h) / h;
+            int len = desc.type.getLength();
+            DataBlock w = new DataBlock(len);
+            desc.type.fill(w);
+            for (int k = 0, start = 0; k < nf; ++k, start += c) {
+                if (!Double.isNaN(desc.coeff[k])) {
+                    dcoeff_[i][k] = w.dot(moments.d[i].range(start, start + len)) / h;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean transition(DynamicFactorModel model, IMSsf ssf, Moments moments) {
+        DynamicFactorModel.TransitionDescriptor tdesc = model.getTransition();
+        int c = model.getBlockLength(), nf = model.getFactorsCount(), nl = tdesc.nlags;
+        Matrix A = tdesc.varParams, E = moments.Esum;
+        // moments of f(t) and of its lags (x(t)), which are in the state at t
+        Matrix E00 = new Matrix(nf, nf), E01 = new Matrix(nf, nf * nl),
+                E11 = new Matrix(nf * nl, nf * nl);
+        for (int i = 0; i < nf; ++i) {
+            for (int j = 0; j < nf; ++j) {
+                E00.set(i, j, E.get(i * c, j * c));
+                for (int k = 0; k < nl; ++k) {
+                    E01.set(i, j * nl + k, E.get(i * c, j * c + k + 1));
+                    for (int l = 0; l < nl; ++l) {
+                        E11.set(i * nl + k, j * nl + l, E.get(i * c + k + 1, j * c + l + 1));
+                    }
+                }
+            }
+        }
+        // S = E(u u') = E00 - A E01' - E01 A' + A E11 A'
+        Matrix AE01 = A.times(E01.transpose());
+        Matrix S = A.times(E11).times(A.transpose());
+        S.subMatrix().add(E00.subMatrix());
+        for (int i = 0; i < nf; ++i) {
+            for (int j = 0; j < nf; ++j) {
+                S.add(i, j, -AE01.get(i, j) - AE01.get(j, i));
+            }
+        }
+        Matrix Vi = inverse(tdesc.covar);
+        // dA = V^-1 (E01 - A E11)
+        Matrix D = A.times(E11);
+        D.chs();
+        D.subMatrix().add(E01.subMatrix());
+        dA_ = Vi.times(D);
+        // G = -1/2 (m V^-1 - V^-1 S V^-1)
+        dV_ = Vi.times(S).times(Vi);
+        Matrix mVi = Vi.clone();
+        mVi.mul(-moments.m);
+        dV_.subMatrix().add(mVi.subMatrix());
+        dV_.mul(.5);
+        return moments.E0 == null || initial(model, ssf, moments.E0);
+    }
+
+    /**
+     * Contribution of the initial state a(0)=N(0, P0), with P0 = T Pf0 T' +
+     * V. When Pf0 is the unconditional variance, P0 = Pf0 and the derivatives
+     * of P0 are obtained through the solution of X = T'XT + W (adjoint
+     * equation of the steady state equation)
+     */
+    private boolean initial(DynamicFactorModel model, IMSsf ssf, Matrix E0) {
+        int c = model.getBlockLength(), nf = model.getFactorsCount(), nl = model.getTransition().nlags;
+        int dim = nf * c;
+        Matrix Pf0 = new Matrix(dim, dim);
+        ssf.Pf0(Pf0.subMatrix());
+        Matrix T = new Matrix(dim, dim);
+        ssf.T(0, T.subMatrix());
+        Matrix P0 = Pf0.clone();
+        ssf.TVT(0, P0.subMatrix());
+        ssf.addV(0, P0.subMatrix());
+        Matrix P0i = inverse(P0);
+        // W = d(ll)/d(P0) = -1/2 (P0^-1 - P0^-1 E0 P0^-1)
+        Matrix W = P0i.times(E0).times(P0i);
+        P0i.chs();
+        W.subMatrix().add(P0i.subMatrix());
+        W.mul(.5);
+        Matrix X = W;
+        if (model.getInitialization() == VarSpec.Initialization.Unconditional) {
+            X = DynamicFactorModel.lyapunov(T.transpose(), W);
+            if (X == null) {
+                return false;
+            }
+        }
+        // d(ll) = 2 tr(X T Pf0 dT') + tr(X dV)
+        Matrix XTP = X.times(T).times(Pf0);
+        for (int i = 0; i < nf; ++i) {
+            for (int j = 0; j < nf; ++j) {
+                for (int k = 0; k < nl; ++k) {
+                    dA_.add(i, j * nl + k, 2 * XTP.get(i * c, j * c + k));
+                }
+                dV_.add(i, j, X.get(i * c, j * c));
+            }
+        }
+        return true;
+    }
+
+    private static Matrix inverse(Matrix m) {
+        Matrix l = m.clone();
+        SymmetricMatrix.lcholesky(l);
+        Matrix li = LowerTriangularMatrix.inverse(l);
+        return SymmetricMatrix.XtX(li);
+    }
+}
@@ -17,6 +17,7 @@ import ec.tstoolkit.maths.matrices.MatrixException;
 import ec.tstoolkit.maths.matrices.SubMatrix;
 import ec.tstoolkit.maths.matrices.SymmetricMatrix;
 import ec.tstoolkit.mssf2.DefaultTimeInvariantMultivariateSsf;
+import ec.tstoolkit.mssf2.IArraySsf;
 import ec.tstoolkit.mssf2.IMSsf;
 import ec.tstoolkit.var.VarSpec;
 import java.util.ArrayList;
@@ -546,6 +547,52 @@ public class DynamicFactorModel implements Cloneable, IProcResults {
     private List<MeasurementDescriptor> mdesc_ = new ArrayList<>();
     private VarSpec.Initialization init_ = VarSpec.Initialization.Unconditional;
     private Matrix V0_;
+    // shared by the clones
+    private TransitionCache tcache_ = new TransitionCache();
+
+    /**
+     * Transition block of the state space form (T, V, W and the unconditional
+     * initial variance), which only depends on the VAR model and on the block
+     * length. The matrices of a block are never modified.
+     */
+    private static final class TransitionBlock {
+
+        private final int c;
+        private final Matrix varParams, covar, T, V, W, Pf0;
+
+        private TransitionBlock(int c, TransitionDescriptor tdesc, Matrix T, Matrix V, Matrix W, Matrix Pf0) {
+            this.c = c;
+            this.varParams = tdesc.varParams.clone();
+            this.covar = tdesc.covar.clone();
+            this.T = T;
+            this.V = V;
+            this.W = W;
+            this.Pf0 = Pf0;
+        }
+
+        private boolean matches(int c, TransitionDescriptor tdesc) {
+            return this.c == c && Arrays.equals(varParams.internalStorage(), tdesc.varParams.internalStorage())
+                    && Arrays.equals(covar.internalStorage(), tdesc.covar.internalStorage());
+        }
+    }
+
+    /**
+     * Last transition block used by a model or by its clones, so that the
+     * state space forms of models that only differ by their measurements (for
+     * instance during the estimation of the loadings) don't recompute it
+     */
+    private static final class TransitionCache {
+
+        private TransitionBlock block;
+
+        private synchronized TransitionBlock get(int c, TransitionDescriptor tdesc) {
+            return block != null && block.matches(c, tdesc) ? block : null;
+        }
+
+        private synchronized void set(TransitionBlock block) {
+            this.block = block;
+        }
+    }
 
     /**
      * Creates a new dynamic factors model
@@ -882,6 +929,16 @@ public class DynamicFactorModel implements Cloneable, IProcResults {
         return new Ssf();
     }
 
+    /**
+     * Array form of the state space representation (Cholesky factors of the
+     * measurement and transition innovations), used by the square root filter
+     *
+     * @return
+     */
+    public IArraySsf arraySsfRepresentation() {
+        return new Ssf();
+    }
+
     /**
      *
      * @return
@@ -994,6 +1051,7 @@ public class DynamicFactorModel implements Cloneable, IProcResults {
             return DynamicFactorModel.this;
         }
         private final DataBlock ttmp, xtmp;
+        private final Matrix wtmp, vtmp;
 
         private Ssf() {
             int nl = tdesc_.nlags;
@@ -1001,6 +1059,8 @@ public class DynamicFactorModel implements Cloneable, IProcResults {
             this.initialize(mdim, vdim, nf_, true);
             ttmp = new DataBlock(nf_);
             xtmp = new DataBlock(mdim);
+            wtmp = new Matrix(nf_, mdim);
+            vtmp = new Matrix(nf_, nf_);
             // Measurement
             for (int i = 0; i < vdim; ++i) {
                 MeasurementDescriptor zdesc = mdesc_.get(i);
@@ -1017,11 +1077,12 @@ public class DynamicFactorModel implements Cloneable, IProcResults {
             }
             // Transition
             // T, S
+            TransitionBlock block = tcache_.get(c_, tdesc_);
             for (int i = 0, r = 0; i < nf_; ++i, r += c_) {
                 if (m_S != null) {
                     m_S.set(r, i, 1);
                 }
-                for (int j = 0, c = 0; j < nf_; ++j, c += c_) {
+                for (int j = 0, c = 0; j < nf_ && block == null; ++j, c += c_) {
                     SubMatrix B = m_T.subMatrix(r, r + c_, c, c + c_);
                     if (i == j) {
                         B.subDiagonal(-1).set(1);
@@ -1032,11 +1093,22 @@ public class DynamicFactorModel implements Cloneable, IProcResults {
             }
             // Q
             m_Q.copy(tdesc_.covar);
-            updateTransition();
+            if (block != null) {
+                m_T = block.T;
+                m_V = block.V;
+                m_W = block.W;
+            } else {
+                updateTransition();
+            }
             // initial covariance
             switch (init_) {
                 case Unconditional:
-                    m_Pf0 = getInitialVariance();
+                    if (block != null && block.Pf0 != null) {
+                        m_Pf0 = block.Pf0;
+                    } else {
+                        m_Pf0 = getInitialVariance();
+                        block = null;
+                    }
                     break;
                 case UserDefined:
                     m_Pf0 = V0_;
@@ -1048,6 +1120,10 @@ public class DynamicFactorModel implements Cloneable, IProcResults {
 //                        addV(0, m_Pf0.subMatrix());
 //                    }
             }
+            if (block == null) {
+                tcache_.set(new TransitionBlock(c_, tdesc_, m_T, m_V, m_W,
+                        init_ == VarSpec.Initialization.Unconditional ? m_Pf0 : null));
+            }
         }
 
         @Override
@@ -1071,22 +1147,69 @@ public class DynamicFactorModel implements Cloneable, IProcResults {
             x.extract(0, -1, c_).copy(ttmp);
         }
 
-        // TODO: improvement should not be too difficult (process by block)
+        /**
+         * Computes T V T' by block. Only the first row of each block of T
+         * (the VAR equations) is not a simple shift, so that we just need to
+         * compute W = A V (A contains the VAR rows) and A V A'. The other
+         * items of T V T' are items of V, moved by one position along the
+         * diagonal inside each block.
+         *
+         * @param pos
+         * @param vm
+         */
         @Override
         public void TVT(final int pos, final SubMatrix vm) {
-            // usual solution
-            DataBlockIterator cols = vm.columns();
-            DataBlock col = cols.getData();
-            do {
-                TX(pos, col);
-            } while (cols.next());
-
-            DataBlockIterator rows = vm.rows();
-            DataBlock row = rows.getData();
-            do {
-                TX(pos, row);
-            } while (rows.next());
-            SymmetricMatrix.reinforceSymmetry(vm);
+            int nl = tdesc_.nlags;
+            Matrix phi = tdesc_.varParams;
+            // W = A V
+            wtmp.set(0);
+            for (int r = 0; r < nf_; ++r) {
+                DataBlock w = wtmp.row(r);
+                for (int j = 0, jc = 0; j < nf_; ++j, jc += c_) {
+                    for (int l = 0; l < nl; ++l) {
+                        double a = phi.get(r, j * nl + l);
+                        if (a != 0) {
+                            w.addAY(a, vm.row(jc + l));
+                        }
+                    }
+                }
+            }
+            // A V A'
+            for (int r = 0; r < nf_; ++r) {
+                DataBlock w = wtmp.row(r);
+                for (int s = 0; s <= r; ++s) {
+                    double q = 0;
+                    for (int j = 0, jc = 0; j < nf_; ++j, jc += c_) {
+                        for (int l = 0; l < nl; ++l) {
+                            q += phi.get(s, j * nl + l) * w.get(jc + l);
+                        }
+                    }
+                    vtmp.set(r, s, q);
+                    vtmp.set(s, r, q);
+                }
+            }
+            // shifted blocks (backwards, to avoid any overlapping)
+            for (int r = 0, rc = 0; r < nf_; ++r, rc += c_) {
+                for (int s = 0, sc = 0; s < nf_; ++s, sc += c_) {
+                    for (int p = c_ - 1; p > 0; --p) {
+                        for (int q = c_ - 1; q > 0; --q) {
+                            vm.set(rc + p, sc + q, vm.get(rc + p - 1, sc + q - 1));
+                        }
+                    }
+                }
+            }
+            // VAR rows/columns
+            for (int r = 0, rc = 0; r < nf_; ++r, rc += c_) {
+                DataBlock w = wtmp.row(r);
+                for (int s = 0, sc = 0; s < nf_; ++s, sc += c_) {
+                    for (int q = 1; q < c_; ++q) {
+                        double x = w.get(sc + q - 1);
+                        vm.set(rc, sc + q, x);
+                        vm.set(sc + q, rc, x);
+                    }
+                    vm.set(rc, sc, vtmp.get(r, s));
+                }
+            }
         }
 
         @Override
@@ -1165,7 +1288,55 @@ public class DynamicFactorModel implements Cloneable, IProcResults {
             // We have to solve the steady state equation:
             // V = T V T' + Q
             // We consider the nlag*nb, nlag*nb sub-system
+            Matrix cov = solveVarLyapunov();
+            if (cov == null) {
+                cov = solveVarSystem();
+            }
+            Matrix fullCov = new Matrix(getStateDim(), getStateDim());
+            for (int r = 0; r < nf_; ++r) {
+                for (int c = 0; c < nf_; ++c) {
+                    fullCov.subMatrix(r * c_, r * c_ + nl, c * c_, c * c_ + nl).copy(cov.subMatrix(r * nl, (r + 1) * nl, c * nl, (c + 1) * nl));
+                }
+            }
+            for (int i = nl; i < c_; ++i) {
+                TVT(0, fullCov.subMatrix());
+                addV(0, fullCov.subMatrix());
+            }
+            return fullCov;
+        }
 
+        /**
+         * Solves the steady state equation of the VAR (companion form, by
+         * factor and by lag) by doubling
+         *
+         * @return The unconditional covariance or null if the iterations
+         * don't converge (non stationary VAR)
+         */
+        private Matrix solveVarLyapunov() {
+            int nl = tdesc_.nlags;
+            int n = nf_ * nl;
+            Matrix T = new Matrix(n, n), Q = new Matrix(n, n);
+            for (int i = 0; i < nf_; ++i) {
+                T.row(i * nl).copy(tdesc_.varParams.row(i));
+                for (int k = 1; k < nl; ++k) {
+                    T.set(i * nl + k, i * nl + k - 1, 1);
+                }
+                for (int j = 0; j < nf_; ++j) {
+                    Q.set(i * nl, j * nl, tdesc_.covar.get(i, j));
+                }
+            }
+            return lyapunov(T, Q);
+        }
+
+        /**
+         * Solves the steady state equation of the VAR through the linear
+         * system on the n*(n+1)/2 distinct elements of the covariance (n =
+         * nb*nlag). Used when the doubling algorithm doesn't converge
+         *
+         * @return
+         */
+        private Matrix solveVarSystem() {
+            int nl = tdesc_.nlags;
             int n = nf_ * nl;
             Matrix cov = new Matrix(n, n);
             int np = (n * (n + 1)) / 2;
@@ -1208,18 +1379,50 @@ public class DynamicFactorModel implements Cloneable, IProcResults {
                 j += n - i;
             }
             SymmetricMatrix.fromLower(cov);
-            Matrix fullCov = new Matrix(getStateDim(), getStateDim());
-            for (int r = 0; r < nf_; ++r) {
-                for (int c = 0; c < nf_; ++c) {
-                    fullCov.subMatrix(r * c_, r * c_ + nl, c * c_, c * c_ + nl).copy(cov.subMatrix(r * nl, (r + 1) * nl, c * nl, (c + 1) * nl));
-                }
+            return cov;
+        }
+    }
+
+    private static final int LYAPUNOV_MAXITER = 60;
+    private static final double LYAPUNOV_EPS = 1e-15;
+
+    /**
+     * Solves the discrete Lyapunov equation V = T V T' + Q by doubling: V(0) =
+     * Q, T(0) = T, V(k+1) = V(k) + T(k) V(k) T(k)', T(k+1) = T(k)^2. V(k)
+     * contains the first 2^k terms of sum(T^i Q T'^i)
+     *
+     * @param T
+     * @param Q
+     * @return The solution or null if the iterations don't converge (T is not
+     * stable)
+     */
+    static Matrix lyapunov(Matrix T, Matrix Q) {
+        Matrix V = Q.clone(), A = T.clone();
+        for (int i = 0; i < LYAPUNOV_MAXITER; ++i) {
+            Matrix dV = A.times(V).times(A.transpose());
+            V.subMatrix().add(dV.subMatrix());
+            double nv = maxAbs(V);
+            if (Double.isNaN(nv) || Double.isInfinite(nv)) {
+                return null;
             }
-            for (int i = nl; i < c_; ++i) {
-                TVT(0, fullCov.subMatrix());
-                addV(0, fullCov.subMatrix());
+            if (maxAbs(dV) <= LYAPUNOV_EPS * nv) {
+                SymmetricMatrix.reinforceSymmetry(V);
+                return V;
+            }
+            A = A.times(A);
+        }
+        return null;
+    }
+
+    private static double maxAbs(Matrix m) {
+        double n = 0;
+        for (double x : m.internalStorage()) {
+            double ax = Math.abs(x);
+            if (ax > n || Double.isNaN(ax)) {
+                n = ax;
             }
-            return fullCov;
         }
+        return n;
     }
 
     private static int pos(int r, int c, int n) {
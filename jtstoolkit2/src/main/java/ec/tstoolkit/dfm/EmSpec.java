@@ -15,15 +15,19 @@ import java.util.Map;
  */
 public class EmSpec implements IProcSpecification, Cloneable {
 
-    public static final int DEF_VERSION = 2, DEF_MAXITER = 100, DEF_MAXNUMITER = 50;
+    public static final int DEF_VERSION = 2, DEF_MAXITER = 100, DEF_MAXNUMITER = 50, DEF_PARALLELISM = 1;
     public static final double DEF_PRECISION = 1e-9;
-    public static final String ENABLED = "enabled", VERSION = "version", MAXITER = "maxiter", MAXNUMITER = "maxnumiter", PRECISION = "precision";
+    public static final boolean DEF_ACCELERATED = false;
+    public static final String ENABLED = "enabled", VERSION = "version", MAXITER = "maxiter", MAXNUMITER = "maxnumiter", PRECISION = "precision",
+            ACCELERATED = "accelerated", PARALLELISM = "parallelism";
 
     private boolean enabled_;
     private int version_ = DEF_VERSION;
     private int maxIter_ = DEF_MAXITER;
      private int maxNumIter_ = DEF_MAXNUMITER;
     private double eps_ = DEF_PRECISION;
+    private boolean accelerated_ = DEF_ACCELERATED;
+    private int parallelism_ = DEF_PARALLELISM;
 
     public void setEnabled(boolean use) {
         enabled_ = use;
@@ -65,6 +69,33 @@ public class EmSpec implements IProcSpecification, Cloneable {
         return eps_;
     }
 
+    /**
+     * SQUAREM acceleration of the EM algorithm (only used by the version 2)
+     *
+     * @param accelerated
+     */
+    public void setAccelerated(boolean accelerated) {
+        accelerated_ = accelerated;
+    }
+
+    public boolean isAccelerated() {
+        return accelerated_;
+    }
+
+    /**
+     * Number of threads used in the M-step of the loadings (only used by the
+     * version 2)
+     *
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+        parallelism_ = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism_;
+    }
+
     @Override
     public EmSpec clone() {
         try {
@@ -90,6 +121,12 @@ public class EmSpec implements IProcSpecification, Cloneable {
         if (eps_ != DEF_PRECISION || verbose) {
             info.set(PRECISION, eps_);
         }
+        if (accelerated_ != DEF_ACCELERATED || verbose) {
+            info.set(ACCELERATED, accelerated_);
+        }
+        if (parallelism_ != DEF_PARALLELISM || verbose) {
+            info.set(PARALLELISM, parallelism_);
+        }
         return info;
     }
 
@@ -118,6 +155,14 @@ public class EmSpec implements IProcSpecification, Cloneable {
         if (e != null) {
             eps_ = e;
         }
+        Boolean accelerated = info.get(ACCELERATED, Boolean.class);
+        if (accelerated != null) {
+            accelerated_ = accelerated;
+        }
+        Integer parallelism = info.get(PARALLELISM, Integer.class);
+        if (parallelism != null) {
+            parallelism_ = parallelism;
+        }
         return true;
     }
 
@@ -138,7 +183,8 @@ public class EmSpec implements IProcSpecification, Cloneable {
     public boolean equals(EmSpec spec) {
         return enabled_ == spec.enabled_ && maxIter_ == spec.maxIter_
                 && maxNumIter_ == spec.maxNumIter_ && version_ == spec.version_
-                && spec.eps_ == eps_;
+                && spec.eps_ == eps_ && spec.accelerated_ == accelerated_
+                && spec.parallelism_ == parallelism_;
     }
 
     public static void fillDictionary(String prefix, Map<String, Class> dic) {
@@ -147,5 +193,7 @@ public class EmSpec implements IProcSpecification, Cloneable {
         dic.put(InformationSet.item(prefix, MAXITER), Integer.class);
         dic.put(InformationSet.item(prefix, MAXNUMITER), Integer.class);
         dic.put(InformationSet.item(prefix, PRECISION), Double.class);
+        dic.put(InformationSet.item(prefix, ACCELERATED), Boolean.class);
+        dic.put(InformationSet.item(prefix, PARALLELISM), Integer.class);
     }
 }
@@ -20,17 +20,43 @@ public class NumericalProcessingSpec implements IProcSpecification, Cloneable {
         LevenbergMarquardt
     }
 
+    /**
+     * Filter used in the computation of the likelihood. SquareRoot (array
+     * filter) is slower but more robust for near-singular models. Univariate
+     * processes the observations one by one
+     */
+    public static enum FilterEngine{
+        Standard,
+        Univariate,
+        SquareRoot
+    }
+
+    /**
+     * Information matrix of the estimated parameters. Curvature uses the
+     * approximation of the Hessian provided by the minimizer. OuterProduct
+     * uses the outer product of the contributions of the periods to the score
+     * of the likelihood (BHHH, see DfmInformation)
+     */
+    public static enum Information{
+        Curvature,
+        OuterProduct
+    }
+
     public static final int DEF_VERSION = 2, DEF_MAXITER = 1000, DEF_MAXSITER = 15,
-            DEF_NITER = 5;
+            DEF_NITER = 5, DEF_PARALLELISM = 1, DEF_STARTS = 1;
     public static final Boolean DEF_BLOCK = true, DEF_MIXED=true, DEF_IVAR=false;
     public static final String ENABLED = "enabled", MAXITER = "maxiter", MAXSITER = "maxsiter", NITER = "niter", 
-            BLOCKITER = "blockiter", METHOD="method", EPS = "eps", MIXED="mixed", IVAR="ivar";
+            BLOCKITER = "blockiter", METHOD="method", EPS = "eps", MIXED="mixed", IVAR="ivar", ENGINE="engine",
+            PARALLELISM="parallelism", STARTS="starts", INFORMATION="information";
     public static final double DEF_EPS = 1e-9;
     private boolean enabled_;
     private int maxiter_ = DEF_MAXITER, maxsiter_ = DEF_MAXSITER, niter_ = DEF_NITER;
+    private int parallelism_ = DEF_PARALLELISM, starts_ = DEF_STARTS;
     private boolean block_ = DEF_BLOCK, mixed_=DEF_MIXED, ivar_=DEF_IVAR;
     private double eps_ = DEF_EPS;
     private Method method_ = Method.LevenbergMarquardt;
+    private FilterEngine engine_ = FilterEngine.Standard;
+    private Information information_ = Information.Curvature;
 
     public void setEnabled(boolean use) {
         enabled_ = use;
@@ -96,6 +122,49 @@ public class NumericalProcessingSpec implements IProcSpecification, Cloneable {
         method_=m;
     }
     
+    public FilterEngine getFilterEngine(){
+        return engine_;
+    }
+    
+    public void setFilterEngine(FilterEngine engine){
+        engine_=engine;
+    }
+    
+    public Information getInformation(){
+        return information_;
+    }
+    
+    public void setInformation(Information information){
+        information_=information;
+    }
+    
+    public int getStarts(){
+        return starts_;
+    }
+    
+    /**
+     * Number of concurrent estimations (from the initial model and from
+     * perturbations of it) in a multi-start estimation. 1 for a single
+     * estimation
+     * @param n 
+     */
+    public void setStarts(int n){
+        starts_=n;
+    }
+    
+    public int getParallelism(){
+        return parallelism_;
+    }
+    
+    /**
+     * Number of threads used in the computation of the numerical derivatives
+     * (1 for a sequential computation)
+     * @param n 
+     */
+    public void setParallelism(int n){
+        parallelism_=n;
+    }
+    
     public double getPrecision(){
         return eps_;
     }
@@ -139,6 +208,18 @@ public class NumericalProcessingSpec implements IProcSpecification, Cloneable {
             info.set(NITER, niter_);
         }
         info.set(METHOD, method_.name());
+        if (engine_ != FilterEngine.Standard || verbose) {
+            info.set(ENGINE, engine_.name());
+        }
+        if (information_ != Information.Curvature || verbose) {
+            info.set(INFORMATION, information_.name());
+        }
+        if (starts_ != DEF_STARTS || verbose) {
+            info.set(STARTS, starts_);
+        }
+        if (parallelism_ != DEF_PARALLELISM || verbose) {
+            info.set(PARALLELISM, parallelism_);
+        }
         return info;
     }
 
@@ -175,6 +256,14 @@ public class NumericalProcessingSpec implements IProcSpecification, Cloneable {
         if (ni != null) {
             niter_ = ni;
         }
+        ni = info.get(PARALLELISM, Integer.class);
+        if (ni != null) {
+            parallelism_ = ni;
+        }
+        ni = info.get(STARTS, Integer.class);
+        if (ni != null) {
+            starts_ = ni;
+        }
         Double eps = info.get(EPS, Double.class);
         if (eps != null) {
             eps_ = eps;
@@ -182,6 +271,12 @@ public class NumericalProcessingSpec implements IProcSpecification, Cloneable {
         String m=info.get(METHOD, String.class);
         if (m != null)
             method_=Method.valueOf(m);
+        String e=info.get(ENGINE, String.class);
+        if (e != null)
+            engine_=FilterEngine.valueOf(e);
+        String im=info.get(INFORMATION, String.class);
+        if (im != null)
+            information_=Information.valueOf(im);
         return true;
     }
 
@@ -192,8 +287,10 @@ public class NumericalProcessingSpec implements IProcSpecification, Cloneable {
 
     public boolean equals(NumericalProcessingSpec obj) {
         return obj.enabled_ == enabled_ && obj.block_ == block_ && obj.mixed_ == mixed_
-                && obj.ivar_== ivar_ && obj.eps_ == eps_ && obj.method_ == method_
-                && obj.maxiter_ == maxiter_ && obj.maxsiter_ == obj.maxsiter_ && obj.niter_ == niter_;
+                && obj.ivar_== ivar_ && obj.eps_ == eps_ && obj.method_ == method_ && obj.engine_ == engine_
+                && obj.maxiter_ == maxiter_ && obj.maxsiter_ == obj.maxsiter_ && obj.niter_ == niter_
+                && obj.parallelism_ == parallelism_ && obj.information_ == information_
+                && obj.starts_ == starts_;
     }
 
     @Override
@@ -217,5 +314,9 @@ public class NumericalProcessingSpec implements IProcSpecification, Cloneable {
         dic.put(InformationSet.item(prefix, IVAR), Boolean.class);
         dic.put(InformationSet.item(prefix, EPS), Double.class);
         dic.put(InformationSet.item(prefix, METHOD), String.class);
+        dic.put(InformationSet.item(prefix, ENGINE), String.class);
+        dic.put(InformationSet.item(prefix, PARALLELISM), Integer.class);
+        dic.put(InformationSet.item(prefix, STARTS), Integer.class);
+        dic.put(InformationSet.item(prefix, INFORMATION), String.class);
     }
 }
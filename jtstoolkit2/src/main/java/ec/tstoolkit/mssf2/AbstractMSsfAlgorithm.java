@@ -52,8 +52,27 @@ public abstract class AbstractMSsfAlgorithm {
      */
     protected DefaultLikelihoodEvaluation<Likelihood> calcLikelihood(
 	    final MPredictionErrorDecomposition dped) {
+	return calcLikelihood(dped, null);
+    }
+
+    /**
+     *
+     * @param dped
+     * @param xres Additional residuals, which are taken into account in the
+     * prediction error decomposition but are not stored in it (may be null)
+     * @return
+     */
+    protected DefaultLikelihoodEvaluation<Likelihood> calcLikelihood(
+	    final MPredictionErrorDecomposition dped, final double[] xres) {
 	Likelihood cll = new Likelihood();
 	evaluate(dped, cll);
+	if (xres != null && xres.length > 0) {
+	    double[] res = dped.allResiduals();
+	    double[] all = new double[res.length + xres.length];
+	    System.arraycopy(res, 0, all, 0, res.length);
+	    System.arraycopy(xres, 0, all, res.length, xres.length);
+	    cll.setRes(all);
+	}
 	DefaultLikelihoodEvaluation<Likelihood> ll = new DefaultLikelihoodEvaluation<>(
 		cll);
 	ll.useLogLikelihood(!m_ssq);
@@ -61,6 +61,7 @@ public class ArrayFilter {
             rslts.save(m_pos, m_state);
             postArray();
         } while (++m_pos < m_end);
+        rslts.close();
         return true;
     }
 
@@ -78,8 +79,11 @@ public class ArrayFilter {
         if (a0 != null) {
             m_state.A.copyFrom(a0, 0);
         }
+        // same initialisation as MFilter: P(0) = T Pf0 T' + V
         Matrix P0 = new Matrix(m_r, m_r);
         m_ssf.Pf0(P0.subMatrix());
+        m_ssf.TVT(0, P0.subMatrix());
+        m_ssf.addV(0, P0.subMatrix());
         try {
             SymmetricMatrix.lcholesky(P0, 1e-9);
             E().copy(P0.subMatrix());
@@ -113,7 +117,8 @@ public class ArrayFilter {
                 m_state.E.set(i, y - m_ssf.ZX(m_pos, i, m_state.A));
             }
         }
-        LowerTriangularMatrix.rsolve(m_state.F, m_state.E);
+        // missing values correspond to null rows of F
+        LowerTriangularMatrix.rsolve(m_state.F, m_state.E, MFilter.Zero);
     }
     // X = |A B C|
     //     |D E F|
@@ -0,0 +1,580 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.mssf2;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.design.Development;
+import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.maths.matrices.SubMatrix;
+import ec.tstoolkit.maths.matrices.SymmetricMatrix;
+import ec.tstoolkit.ssf2.ResidualsCumulator;
+
+/**
+ * Collapsed representation of a multivariate model with a diagonal
+ * measurement variance (Jungbacker-Koopman). For each period, the
+ * observations y~ = H^-1/2 y are projected on the space spanned by the
+ * (active) columns of Z~ = H^-1/2 Z: Z~ = Q R, with Q orthogonal and R upper
+ * trapezoidal (Householder). The first rows of Q'y~ (R a + e1, e1 ~ N(0, I))
+ * define the collapsed model, which contains at most as many variables as
+ * the active part of the state vector; the other rows (e2 ~ N(0, I)) don't
+ * depend on the state.
+ *
+ * To keep the exact likelihood, the collapsed observations are rescaled by
+ * the standard deviations of the corresponding original variables. The
+ * remaining residuals (with the standard deviations of the other original
+ * variables) have to be added to the results of the filter by means of
+ * addResiduals. The smoothed states of the collapsed model are identical to
+ * the smoothed states of the original model.
+ *
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public class CollapsedMSsf extends AbstractMultivariateSsf {
+
+    /**
+     * Creates the collapsed model
+     *
+     * @param ssf The original model
+     * @param data The original data
+     * @return The collapsed model or null if the model can't be collapsed
+     * (non positive measurement variances) or if there is no gain in
+     * collapsing it.
+     */
+    public static CollapsedMSsf create(final IMSsf ssf, final IMSsfData data) {
+        if (!ssf.hasH()) {
+            return null;
+        }
+        int[] act = activeColumns(ssf, data.getCount());
+        if (act.length >= ssf.getVarsCount()) {
+            return null;
+        }
+        CollapsedMSsf cssf = new CollapsedMSsf(ssf, act);
+        if (!cssf.collapse(data)) {
+            return null;
+        }
+        return cssf;
+    }
+
+    private static int[] activeColumns(final IMSsf ssf, final int n) {
+        int dim = ssf.getStateDim(), nvars = ssf.getVarsCount();
+        boolean[] used = new boolean[dim];
+        DataBlock z = new DataBlock(dim);
+        int nt = ssf.isMeasurementEquationTimeInvariant() ? 1 : n;
+        for (int pos = 0; pos < nt; ++pos) {
+            for (int v = 0; v < nvars; ++v) {
+                if (ssf.hasZ(pos, v)) {
+                    z.set(0);
+                    ssf.Z(pos, v, z);
+                    for (int j = 0; j < dim; ++j) {
+                        if (z.get(j) != 0) {
+                            used[j] = true;
+                        }
+                    }
+                }
+            }
+        }
+        int nact = 0;
+        for (int j = 0; j < dim; ++j) {
+            if (used[j]) {
+                ++nact;
+            }
+        }
+        int[] act = new int[nact];
+        for (int j = 0, k = 0; j < dim; ++j) {
+            if (used[j]) {
+                act[k++] = j;
+            }
+        }
+        return act;
+    }
+
+    /**
+     * Householder reduction of the observations of a given period
+     */
+    private static class Reduction {
+
+        // observed variables
+        final int[] obs;
+        // number of collapsed variables
+        final int m;
+        // collapsed measurements (m x nact, by rows) and variances
+        final double[] z, h;
+        // Householder vectors
+        final double[][] v;
+        final double[] tau;
+
+        Reduction(final IMSsf ssf, final int pos, final int[] obs, final int[] act) {
+            this.obs = obs;
+            int n = obs.length, na = act.length;
+            m = Math.min(n, na);
+            double[] a = new double[n * na];
+            h = new double[n];
+            DataBlock zrow = new DataBlock(ssf.getStateDim());
+            for (int i = 0; i < n; ++i) {
+                h[i] = ssf.H(pos, obs[i]);
+                double e = 1 / Math.sqrt(h[i]);
+                zrow.set(0);
+                ssf.Z(pos, obs[i], zrow);
+                for (int j = 0; j < na; ++j) {
+                    a[j * n + i] = zrow.get(act[j]) * e;
+                }
+            }
+            v = new double[m][];
+            tau = new double[m];
+            for (int k = 0; k < m; ++k) {
+                int ck = k * n;
+                double nrm = 0;
+                for (int i = k; i < n; ++i) {
+                    nrm += a[ck + i] * a[ck + i];
+                }
+                if (nrm == 0) {
+                    continue;
+                }
+                nrm = Math.sqrt(nrm);
+                double alpha = a[ck + k] > 0 ? -nrm : nrm;
+                double[] u = new double[n - k];
+                for (int i = k; i < n; ++i) {
+                    u[i - k] = a[ck + i];
+                }
+                u[0] -= alpha;
+                double uu = 0;
+                for (int i = 0; i < u.length; ++i) {
+                    uu += u[i] * u[i];
+                }
+                if (uu == 0) {
+                    continue;
+                }
+                v[k] = u;
+                tau[k] = 2 / uu;
+                for (int j = k; j < na; ++j) {
+                    reflect(k, a, j * n);
+                }
+            }
+            // z = D R, where D contains the standard deviations of the
+            // first m observed variables
+            z = new double[m * na];
+            for (int i = 0; i < m; ++i) {
+                double s = Math.sqrt(h[i]);
+                for (int j = i; j < na; ++j) {
+                    z[i * na + j] = s * a[j * n + i];
+                }
+            }
+        }
+
+        private void reflect(final int k, final double[] x, final int start) {
+            double[] u = v[k];
+            if (u == null) {
+                return;
+            }
+            double s = 0;
+            for (int i = 0; i < u.length; ++i) {
+                s += u[i] * x[start + k + i];
+            }
+            s *= tau[k];
+            for (int i = 0; i < u.length; ++i) {
+                x[start + k + i] -= s * u[i];
+            }
+        }
+
+        /**
+         * Computes Q'H^-1/2 y
+         *
+         * @param y The observations, replaced by the transformed
+         * observations
+         */
+        void transform(final double[] y) {
+            for (int i = 0; i < y.length; ++i) {
+                y[i] /= Math.sqrt(h[i]);
+            }
+            for (int k = 0; k < m; ++k) {
+                reflect(k, y, 0);
+            }
+        }
+
+        boolean isSamePattern(final int[] o) {
+            if (o.length != obs.length) {
+                return false;
+            }
+            for (int i = 0; i < o.length; ++i) {
+                if (o[i] != obs[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final IMSsf ssf;
+    private final int[] act;
+    private final int dim, nvars;
+    private Reduction[] red;
+    private Matrix y;
+    // residuals of the orthogonal part (standardised) and their standard
+    // deviations
+    private double[] res, stde;
+
+    private CollapsedMSsf(final IMSsf ssf, final int[] act) {
+        this.ssf = ssf;
+        this.act = act;
+        dim = ssf.getStateDim();
+        nvars = act.length;
+    }
+
+    private boolean collapse(final IMSsfData data) {
+        int n = data.getCount(), nv = ssf.getVarsCount();
+        red = new Reduction[n];
+        y = new Matrix(nvars, n);
+        y.set(Double.NaN);
+        int nres = 0;
+        int[] tmp = new int[nv];
+        for (int pos = 0; pos < n; ++pos) {
+            int nobs = 0;
+            for (int v = 0; v < nv; ++v) {
+                if (!data.isMissing(v, pos) && ssf.hasZ(pos, v)) {
+                    if (ssf.H(pos, v) <= 0) {
+                        return false;
+                    }
+                    tmp[nobs++] = v;
+                }
+            }
+            int[] obs = new int[nobs];
+            System.arraycopy(tmp, 0, obs, 0, nobs);
+            Reduction prev = pos > 0 ? red[pos - 1] : null;
+            if (prev != null && ssf.isMeasurementEquationTimeInvariant()
+                    && prev.isSamePattern(obs)) {
+                red[pos] = prev;
+            } else {
+                red[pos] = new Reduction(ssf, pos, obs, act);
+            }
+            nres += nobs - red[pos].m;
+        }
+        res = new double[nres];
+        stde = new double[nres];
+        for (int pos = 0, ires = 0; pos < n; ++pos) {
+            Reduction cur = red[pos];
+            int nobs = cur.obs.length;
+            double[] yc = new double[nobs];
+            for (int i = 0; i < nobs; ++i) {
+                yc[i] = data.get(cur.obs[i], pos);
+            }
+            cur.transform(yc);
+            for (int i = 0; i < cur.m; ++i) {
+                y.set(i, pos, yc[i] * Math.sqrt(cur.h[i]));
+            }
+            for (int i = cur.m; i < nobs; ++i, ++ires) {
+                res[ires] = yc[i];
+                stde[ires] = Math.sqrt(cur.h[i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @return The original model
+     */
+    public IMSsf getMSsf() {
+        return ssf;
+    }
+
+    /**
+     *
+     * @return The collapsed observations
+     */
+    public IMSsfData getData() {
+        return new MultivariateSsfData(y.subMatrix(), null);
+    }
+
+    /**
+     * Adds the residuals of the orthogonal part to the results of the filter
+     * on the collapsed model
+     *
+     * @param rslts
+     */
+    public void addResiduals(final ResidualsCumulator rslts) {
+        for (int i = 0; i < res.length; ++i) {
+            rslts.addStd(res[i], stde[i]);
+        }
+    }
+
+    /**
+     *
+     * @return The standardised residuals of the orthogonal part
+     */
+    public double[] getResiduals() {
+        return res.clone();
+    }
+
+    @Override
+    public int getVarsCount() {
+        return nvars;
+    }
+
+    @Override
+    public boolean hasZ(final int pos, final int v) {
+        return v < red[pos].m;
+    }
+
+    @Override
+    public double ZX(final int pos, final int v, final DataBlock x) {
+        Reduction cur = red[pos];
+        if (v >= cur.m) {
+            return 0;
+        }
+        double r = 0;
+        for (int j = v, k = v * nvars + v; j < nvars; ++j, ++k) {
+            r += cur.z[k] * x.get(act[j]);
+        }
+        return r;
+    }
+
+    @Override
+    public void Z(final int pos, final int v, final DataBlock z) {
+        z.set(0);
+        Reduction cur = red[pos];
+        if (v >= cur.m) {
+            return;
+        }
+        for (int j = v, k = v * nvars + v; j < nvars; ++j, ++k) {
+            z.set(act[j], cur.z[k]);
+        }
+    }
+
+    @Override
+    public void XpZd(final int pos, final int v, final DataBlock x, final double d) {
+        Reduction cur = red[pos];
+        if (v >= cur.m) {
+            return;
+        }
+        for (int j = v, k = v * nvars + v; j < nvars; ++j, ++k) {
+            x.add(act[j], d * cur.z[k]);
+        }
+    }
+
+    @Override
+    public double ZVZ(final int pos, final int v, final int w, final SubMatrix V) {
+        Reduction cur = red[pos];
+        if (v >= cur.m || w >= cur.m) {
+            return 0;
+        }
+        double r = 0;
+        for (int i = v, ki = v * nvars + v; i < nvars; ++i, ++ki) {
+            double s = 0;
+            for (int j = w, kj = w * nvars + w; j < nvars; ++j, ++kj) {
+                s += V.get(act[i], act[j]) * cur.z[kj];
+            }
+            r += cur.z[ki] * s;
+        }
+        return r;
+    }
+
+    @Override
+    public void VpZdZ(final int pos, final int v, final int w, final SubMatrix V, final double d) {
+        Reduction cur = red[pos];
+        if (v >= cur.m || w >= cur.m) {
+            return;
+        }
+        for (int i = v, ki = v * nvars + v; i < nvars; ++i, ++ki) {
+            double s = d * cur.z[ki];
+            for (int j = w, kj = w * nvars + w; j < nvars; ++j, ++kj) {
+                V.add(act[i], act[j], s * cur.z[kj]);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasH() {
+        return true;
+    }
+
+    @Override
+    public double H(final int pos, final int v) {
+        Reduction cur = red[pos];
+        return v < cur.m ? cur.h[v] : 0;
+    }
+
+    @Override
+    public void H(final int pos, final SubMatrix h) {
+        h.set(0);
+        Reduction cur = red[pos];
+        for (int i = 0; i < cur.m; ++i) {
+            h.set(i, i, cur.h[i]);
+        }
+    }
+
+    @Override
+    public void addH(final int pos, final SubMatrix v) {
+        Reduction cur = red[pos];
+        for (int i = 0; i < cur.m; ++i) {
+            v.add(i, i, cur.h[i]);
+        }
+    }
+
+    @Override
+    public void R(final int pos, final SubMatrix r) {
+        r.set(0);
+        Reduction cur = red[pos];
+        for (int i = 0; i < cur.m; ++i) {
+            r.set(i, i, Math.sqrt(cur.h[i]));
+        }
+    }
+
+    @Override
+    public void W(final int pos, final SubMatrix w) {
+        if (ssf instanceof IArraySsf) {
+            ((IArraySsf) ssf).W(pos, w);
+            return;
+        }
+        // V = S Q S': W = S L, with LL' = Q
+        int rdim = ssf.getTransitionResDim();
+        Matrix l = new Matrix(rdim, rdim);
+        ssf.Q(pos, l.subMatrix());
+        SymmetricMatrix.lcholesky(l, MFilter.Zero);
+        for (int i = 0; i < rdim; ++i) {
+            for (int j = i + 1; j < rdim; ++j) {
+                l.set(i, j, 0);
+            }
+        }
+        if (ssf.hasS()) {
+            Matrix s = new Matrix(dim, rdim);
+            ssf.S(pos, s.subMatrix());
+            w.product(s.subMatrix(), l.subMatrix());
+        } else {
+            w.copy(l.subMatrix());
+        }
+    }
+
+    @Override
+    public int getStateDim() {
+        return dim;
+    }
+
+    @Override
+    public int getNonStationaryDim() {
+        return ssf.getNonStationaryDim();
+    }
+
+    @Override
+    public int getTransitionResDim() {
+        return ssf.getTransitionResDim();
+    }
+
+    @Override
+    public boolean isDiffuse() {
+        return ssf.isDiffuse();
+    }
+
+    @Override
+    public boolean isTimeInvariant() {
+        return false;
+    }
+
+    @Override
+    public boolean isMeasurementEquationTimeInvariant() {
+        return false;
+    }
+
+    @Override
+    public boolean isTransitionEquationTimeInvariant() {
+        return ssf.isTransitionEquationTimeInvariant();
+    }
+
+    @Override
+    public boolean isTransitionResidualTimeInvariant() {
+        return ssf.isTransitionResidualTimeInvariant();
+    }
+
+    @Override
+    public boolean isValid() {
+        return ssf.isValid();
+    }
+
+    @Override
+    public void diffuseConstraints(final SubMatrix b) {
+        ssf.diffuseConstraints(b);
+    }
+
+    @Override
+    public void Pf0(final SubMatrix pf0) {
+        ssf.Pf0(pf0);
+    }
+
+    @Override
+    public void Pi0(final SubMatrix pi0) {
+        ssf.Pi0(pi0);
+    }
+
+    @Override
+    public void V(final int pos, final SubMatrix qm) {
+        ssf.V(pos, qm);
+    }
+
+    @Override
+    public boolean hasS() {
+        return ssf.hasS();
+    }
+
+    @Override
+    public boolean hasTransitionRes(final int pos) {
+        return ssf.hasTransitionRes(pos);
+    }
+
+    @Override
+    public void Q(final int pos, final SubMatrix qm) {
+        ssf.Q(pos, qm);
+    }
+
+    @Override
+    public void S(final int pos, final SubMatrix sm) {
+        ssf.S(pos, sm);
+    }
+
+    @Override
+    public void T(final int pos, final SubMatrix tr) {
+        ssf.T(pos, tr);
+    }
+
+    @Override
+    public void TVT(final int pos, final SubMatrix vm) {
+        ssf.TVT(pos, vm);
+    }
+
+    @Override
+    public void TM(final int pos, final SubMatrix M) {
+        ssf.TM(pos, M);
+    }
+
+    @Override
+    public void MT(final int pos, final SubMatrix M) {
+        ssf.MT(pos, M);
+    }
+
+    @Override
+    public void addV(final int pos, final SubMatrix p) {
+        ssf.addV(pos, p);
+    }
+
+    @Override
+    public void XT(final int pos, final DataBlock x) {
+        ssf.XT(pos, x);
+    }
+
+    @Override
+    public void TX(final int pos, final DataBlock x) {
+        ssf.TX(pos, x);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+* Copyright 2013 National Bank of Belgium
+*
+* Licensed under the EUPL, Version 1.1 or – as soon they will be approved 
+* by the European Commission - subsequent versions of the EUPL (the "Licence");
+* You may not use this work except in compliance with the Licence.
+* You may obtain a copy of the Licence at:
+*
+* http://ec.europa.eu/idabc/eupl
+*
+* Unless required by applicable law or agreed to in writing, software 
+* distributed under the Licence is distributed on an "AS IS" basis,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the Licence for the specific language governing permissions and 
+* limitations under the Licence.
+*/
+package ec.tstoolkit.mssf2;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.design.Development;
+import ec.tstoolkit.maths.matrices.Matrix;
+
+/**
+ * Receives the results of the smoother, period by period (backward). The
+ * smoothed states and their variances don't need to be stored: they can be
+ * used directly, for instance to compute the moments of the EM algorithm.
+ * The smoother still computes the full variance of the smoothed states at
+ * each period; only the history is avoided.
+ *
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public interface IMSmoothingResults {
+
+    /**
+     *
+     * @param n Number of periods
+     * @param d State dimension
+     * @param v Number of variables
+     */
+    void prepare(int n, int d, int v);
+
+    /**
+     *
+     * @param pos
+     * @param a Smoothed state
+     * @param p Variance of the smoothed state. Null if the variance is not
+     * computed. The objects are re-used by the smoother for the next periods
+     */
+    void save(int pos, DataBlock a, Matrix p);
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.mssf2;
+
+import ec.tstoolkit.data.IReadDataBlock;
+import ec.tstoolkit.design.Development;
+import ec.tstoolkit.eco.Likelihood;
+
+/**
+ * Analytic gradient of the log-likelihood of a state space model with respect
+ * to the parameters of a mapping. It is usually provided by the mapping itself
+ * (see MSsfFunction.setScore)
+ *
+ * @param <S> The class of the state space model
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public interface IMSsfScore<S extends IMSsf> {
+
+    /**
+     *
+     * @param ssf The model, generated by the mapping for the given parameters
+     * @param p The parameters
+     * @param data The data
+     * @param ll The concentrated likelihood of the model
+     * @return The gradient of the (concentrated) log-likelihood or null if it
+     * can't be computed
+     */
+    IReadDataBlock score(S ssf, IReadDataBlock p, IMSsfData data, Likelihood ll);
+}
@@ -34,10 +34,24 @@ public class MFilter {
      */
     public static final double Zero = 1e-9;
 
+    /**
+     * Default relative tolerance used to detect the convergence of P
+     */
+    public static final double DEF_STEADYSTATE_EPS = 1e-12;
+
     private MState m_state;
     private IMSsf m_ssf;
     private IMSsfData m_data;
-    private int m_pos, m_end, m_r, m_e, m_v;
+    private int m_pos, m_end, m_r, m_e, m_v, m_steadypos = -1;
+    // for steady state
+    private boolean m_bsteady, m_bcheck;
+    private boolean[] m_steadypattern;
+    private Matrix m_Pprev;
+    private double m_steadyeps = DEF_STEADYSTATE_EPS;
+    private MWorkspace m_ws;
+    // checkpoint
+    private int m_cpos = -1;
+    private MFilterCheckpoint m_checkpoint;
 
     /**
      *
@@ -84,6 +98,14 @@ public class MFilter {
      */
     public void mpred() {
 
+        if (m_bsteady) {
+            if (isSteadyPattern()) {
+                // F and K are unchanged
+                error();
+                return;
+            }
+            m_bsteady = false;
+        }
         // K = TPZ'(ZPZ')^-1
         // computes (ZP)' in K'. Missing values are set to 0 
         // Z~v x r, P~r x r, K~r x v
@@ -104,7 +126,10 @@ public class MFilter {
         // K L' = TPZ' or L K' = ZPT'
         m_ssf.TM(m_pos, K);
         LowerTriangularMatrix.rsolve(m_state.F, K.transpose(), Zero);
+        error();
+    }
 
+    private void error() {
         m_state.E.set(0);
         for (int i = 0; i < m_v; ++i) {
             if (!m_data.isMissing(i, m_pos)) {
@@ -123,6 +148,94 @@ public class MFilter {
         return m_state;
     }
 
+    /**
+     * Position of the last period at which the filter reached its steady
+     * state (-1 if it never converged)
+     *
+     * @return
+     */
+    public int getSteadyStatePosition() {
+        return m_steadypos;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isInSteadyState() {
+        return m_bsteady;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public double getSteadyStateTolerance() {
+        return m_steadyeps;
+    }
+
+    /**
+     * Relative tolerance on the changes of P used to detect the steady state.
+     * The detection is only done for time invariant models. A non positive
+     * value disables it.
+     *
+     * @param eps
+     */
+    public void setSteadyStateTolerance(final double eps) {
+        m_steadyeps = eps;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public MWorkspace getWorkspace() {
+        return m_ws;
+    }
+
+    /**
+     * Sets a workspace, which will be used instead of new objects when it is
+     * compatible with the processed model. The state of the filter is then
+     * the state of the workspace.
+     *
+     * @param ws
+     */
+    public void setWorkspace(final MWorkspace ws) {
+        m_ws = ws;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getCheckpointPosition() {
+        return m_cpos;
+    }
+
+    /**
+     * The predicted state at the given position will be saved by the next
+     * call of process. A negative value (default) disables the checkpoint.
+     *
+     * @param pos
+     */
+    public void setCheckpointPosition(final int pos) {
+        m_cpos = pos;
+    }
+
+    /**
+     * Predicted state saved at the checkpoint position by the last call of
+     * process (null if the position was not reached)
+     *
+     * @return
+     */
+    public MFilterCheckpoint getCheckpoint() {
+        return m_checkpoint;
+    }
+
+    private boolean useWorkspace() {
+        return m_ws != null && m_ws.isCompatible(m_ssf, m_data);
+    }
+
     private boolean initFilter() {
         m_pos = 0;
         m_r = m_ssf.getStateDim();
@@ -130,11 +243,67 @@ public class MFilter {
         m_e = m_ssf.getTransitionResDim();
         m_end = m_data.getCount();
         m_pos = 0;
+        m_bsteady = false;
+        m_steadypos = -1;
+        m_bcheck = m_steadyeps > 0 && m_ssf.isTimeInvariant();
+        if (m_bcheck) {
+            if (useWorkspace()) {
+                m_steadypattern = m_ws.m_pattern;
+                m_Pprev = m_ws.m_Pprev;
+            } else {
+                m_steadypattern = new boolean[m_v];
+                m_Pprev = new Matrix(m_r, m_r);
+            }
+        } else {
+            m_steadypattern = null;
+            m_Pprev = null;
+        }
+        return true;
+    }
+
+    private boolean isSteadyPattern() {
+        for (int i = 0; i < m_v; ++i) {
+            if (m_steadypattern[i] != m_data.isMissing(i, m_pos)) {
+                return false;
+            }
+        }
         return true;
     }
 
+    /**
+     * Checks that P(t+1|t) = P(t|t-1). In that case, F and K will not change
+     * as long as the missing values pattern is unchanged.
+     */
+    private void checkSteadyState() {
+        double[] p = m_state.P.internalStorage(), q = m_Pprev.internalStorage();
+        double dmax = 0, pmax = 0;
+        for (int i = 0; i < p.length; ++i) {
+            double d = Math.abs(p[i] - q[i]);
+            if (d > dmax) {
+                dmax = d;
+            }
+            double a = Math.abs(p[i]);
+            if (a > pmax) {
+                pmax = a;
+            }
+        }
+        if (dmax <= m_steadyeps * (1 + pmax)) {
+            m_bsteady = true;
+            m_steadypos = m_pos;
+            for (int i = 0; i < m_v; ++i) {
+                m_steadypattern[i] = m_data.isMissing(i, m_pos);
+            }
+        }
+    }
+
     private int initState() {
-        m_state = new MState(m_r, m_v);
+        if (useWorkspace()) {
+            m_state = m_ws.m_state;
+            m_state.A.set(0);
+            m_state.P.set(0);
+        } else {
+            m_state = new MState(m_r, m_v);
+        }
         double[] a0 = m_data.getInitialState();
         if (a0 != null) {
             m_state.A.copyFrom(a0, 0);
@@ -153,18 +322,26 @@ public class MFilter {
         // P = TPT' - (TM)* F^-1 *(TM)' + RQR' --> Symmetric
         // TPZ'(LL')^-1 ZPT' =TPZ'L'^-1*L^-1*ZPT'
         // A = Ta + (TM)* F^-1 * v
-        m_ssf.TVT(m_pos, m_state.P.subMatrix());
+        if (!m_bsteady) {
+            if (m_bcheck) {
+                m_Pprev.copy(m_state.P);
+            }
+            m_ssf.TVT(m_pos, m_state.P.subMatrix());
 
-        for (int i = 0; i < m_v; ++i) {
-            if (!m_data.isMissing(i, m_pos)) {
-                //for (int j = 0; j < m_v; ++j) {
-                //if (!m_data.isMissing(j, m_pos)) {
-                update(m_state.P, m_state.K.column(i));//, m_state.K.column(i));
-                //}
-                //}
+            for (int i = 0; i < m_v; ++i) {
+                if (!m_data.isMissing(i, m_pos)) {
+                    //for (int j = 0; j < m_v; ++j) {
+                    //if (!m_data.isMissing(j, m_pos)) {
+                    update(m_state.P, m_state.K.column(i));//, m_state.K.column(i));
+                    //}
+                    //}
+                }
+            }
+            m_ssf.addV(m_pos, m_state.P.subMatrix());
+            if (m_bcheck) {
+                checkSteadyState();
             }
         }
-        m_ssf.addV(m_pos, m_state.P.subMatrix());
 
         //a(t+1)=Ta(t)+(TPZ)F^-1* v=Ta(t)+(TPZ)(LL')^-1* v
         // = Ta(t)+(TPZ)(L')^-1* L^-1*v =  Ta(t)+K*L^-1*v
@@ -188,6 +365,7 @@ public class MFilter {
     public boolean process(final IMSsf ssf, final IMSsfData data, final IMFilteringResults rslts) {
         m_ssf = ssf;
         m_data = data;
+        m_checkpoint = null;
         if (!initFilter()) {
             return false;
         }
@@ -195,11 +373,61 @@ public class MFilter {
         if (m_pos < 0) {
             return false;
         }
-        if (rslts != null) {
+        run(rslts);
+        return true;
+    }
+
+    /**
+     * Restarts the filter from a checkpoint. The data must coincide with the
+     * data used to create the checkpoint before its position. The results
+     * must contain the filtering of the previous periods (obtained by a
+     * previous call on the same results, with the same dimensions): they are
+     * not re-initialized and they are only saved from the position of the
+     * checkpoint. The accumulated residuals (likelihood) of the results don't
+     * correspond to the resumed data and they shouldn't be used.
+     *
+     * @param ssf
+     * @param data
+     * @param rslts
+     * @param checkpoint
+     * @return False if the checkpoint or the results can't be used for the
+     * given problem
+     */
+    public boolean resume(final IMSsf ssf, final IMSsfData data, final MFilteringResults rslts,
+            final MFilterCheckpoint checkpoint) {
+        m_ssf = ssf;
+        m_data = data;
+        m_checkpoint = null;
+        if (!checkpoint.isCompatible(ssf, data)
+                || !rslts.isResumable(ssf, data, checkpoint.getPosition())
+                || !initFilter()) {
+            return false;
+        }
+        if (useWorkspace()) {
+            m_state = m_ws.m_state;
+        } else {
+            m_state = new MState(m_r, m_v);
+        }
+        checkpoint.copyTo(m_state);
+        m_pos = checkpoint.getPosition();
+        // the storage of the results is preserved
+        run(rslts, false);
+        return true;
+    }
+
+    private void run(final IMFilteringResults rslts) {
+        run(rslts, true);
+    }
+
+    private void run(final IMFilteringResults rslts, final boolean prepare) {
+        if (rslts != null && prepare) {
             rslts.prepare(m_ssf, m_data);
         }
         if (m_pos < m_end) {
             do {
+                if (m_pos == m_cpos) {
+                    m_checkpoint = new MFilterCheckpoint(m_pos, m_state);
+                }
                 mpred();
                 if (rslts != null) {
                     rslts.save(m_pos, m_state);
@@ -210,7 +438,6 @@ public class MFilter {
         if (rslts != null) {
             rslts.close();
         }
-        return true;
     }
 
     // P -= c*r
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.mssf2;
+
+import ec.tstoolkit.design.Development;
+
+/**
+ * Copy of the predicted state of the multivariate filter (a(t|t-1),
+ * P(t|t-1)) at a given position. The filter can be restarted from a
+ * checkpoint (see MFilter.resume) for any data set that coincides with the
+ * data used to create it before that position.
+ *
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public class MFilterCheckpoint {
+
+    private final int m_pos;
+    private final MState m_state;
+
+    /**
+     *
+     * @param pos Position of the checkpoint
+     * @param state Predicted state at that position (copied)
+     */
+    public MFilterCheckpoint(final int pos, final MState state) {
+        m_pos = pos;
+        m_state = new MState(state.getStateDim(), state.getMeasurementDim());
+        m_state.copy(state);
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getPosition() {
+        return m_pos;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getStateDim() {
+        return m_state.getStateDim();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getVarsCount() {
+        return m_state.getMeasurementDim();
+    }
+
+    /**
+     * Checks that the checkpoint can be used for the given model/data
+     *
+     * @param ssf
+     * @param data
+     * @return
+     */
+    public boolean isCompatible(final IMSsf ssf, final IMSsfData data) {
+        return ssf.getStateDim() == getStateDim() && ssf.getVarsCount() == getVarsCount()
+                && m_pos <= data.getCount();
+    }
+
+    void copyTo(final MState state) {
+        state.copy(m_state);
+    }
+}
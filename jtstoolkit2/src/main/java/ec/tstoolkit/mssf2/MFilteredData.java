@@ -30,6 +30,7 @@ public class MFilteredData {
     DataBlockStorage m_A;
     DataBlockStorage m_e;
     private int m_n, m_start;
+    private int m_dim, m_nvars, m_size;
 
     /**
      *
@@ -69,8 +70,8 @@ public class MFilteredData {
      * @param n
      */
     public void checkSize(int n) {
-        m_e.resize(n, Double.NaN);
-        m_A.resize(n);
+        m_e.resize(n - m_start, Double.NaN);
+        m_A.resize(n - m_start);
     }
 
     /**
@@ -105,6 +106,13 @@ public class MFilteredData {
         return m_n;
     }
 
+    /**
+     * Checks that the storages correspond to the given dimensions
+     */
+    boolean isStored(final int dim, final int nvars, final int n) {
+        return m_A != null && dim == m_dim && nvars == m_nvars && n == m_size;
+    }
+
     /**
      *
      * @param dim
@@ -112,7 +120,15 @@ public class MFilteredData {
      * @param n
      */
     public void init(final int dim, final int nvars, final int n) {
+        if (m_A != null && dim == m_dim && nvars == m_nvars && n == m_size) {
+            // same dimensions: the storages are re-used
+            m_n = 0;
+            return;
+        }
         clear();
+        m_dim = dim;
+        m_nvars = nvars;
+        m_size = n;
         m_e = new DataBlockStorage(nvars, n - m_start);
         m_A = new DataBlockStorage(dim, n - m_start);
     }
@@ -123,15 +139,15 @@ public class MFilteredData {
      * @param state
      */
     public void save(final int t, final BaseOrdinaryMState state) {
+        if (t >= m_n) {
+            m_n = t + 1;
+        }
         int st = t - m_start;
         if (st < 0) {
             return;
         }
         m_e.save(st, state.E);
         m_A.save(st, state.A);
-        if (t >= m_n) {
-            ++m_n;
-        }
     }
 
     /**
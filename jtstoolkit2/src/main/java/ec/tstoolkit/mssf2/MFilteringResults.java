@@ -26,7 +26,7 @@ import ec.tstoolkit.ssf2.ResidualsCumulator;
  */
 @Development(status = Development.Status.Alpha)
 public class MFilteringResults extends ResidualsCumulator implements
-        IMFilteringResults {
+        IMFilteringResults, IArrayFilteringResults {
 
     private final VarianceMFilter m_var = new VarianceMFilter();
     private final MFilteredData m_fdata = new MFilteredData();
@@ -53,6 +53,7 @@ public class MFilteringResults extends ResidualsCumulator implements
      */
     @Override
     public void close() {
+        m_var.close();
     }
 
     /**
@@ -95,6 +96,21 @@ public class MFilteringResults extends ResidualsCumulator implements
     @Override
     public void save(final int t, final MState state) {
         m_var.save(t, state);
+        bsave(t, state);
+    }
+
+    /**
+     *
+     * @param t
+     * @param state
+     */
+    @Override
+    public void save(final int t, final ArrayState state) {
+        m_var.save(t, state);
+        bsave(t, state);
+    }
+
+    private void bsave(final int t, final BaseOrdinaryMState state) {
         m_fdata.save(t, state);
         DataBlock diag = state.F.diagonal();
         for (int i = 0; i < state.E.getLength(); ++i) {
@@ -106,11 +122,37 @@ public class MFilteringResults extends ResidualsCumulator implements
     }
 
     /**
+     *
+     * @return
+     */
+    public int getStartSaving() {
+        return m_var.getStartSaving();
+    }
+
+    /**
+     * Checks that the results contain the filtering of a problem with the
+     * same dimensions, saved (at least) from the given position. The filter
+     * can then be resumed from that position (see MFilter.resume)
+     *
+     * @param ssf
+     * @param data
+     * @param pos
+     * @return
+     */
+    public boolean isResumable(final IMSsf ssf, final IMSsfData data, final int pos) {
+        return getStartSaving() <= pos && m_var.isStored(ssf, data.count(0))
+                && m_fdata.isStored(ssf.getStateDim(), data.getVarsCount(), data.getCount());
+    }
+
+    /**
+     * The filtered data (states, errors) and the variances are only saved
+     * from the given position
      *
      * @param start
      */
     public void setStartSaving(int start) {
         m_var.setStartSaving(start);
+        m_fdata.setStartSaving(start);
     }
 
     /**
@@ -120,6 +162,6 @@ public class MFilteringResults extends ResidualsCumulator implements
     public void saveAll(int start) {
         m_var.setSavingK(true);
         m_var.setSavingP(true);
-        m_var.setStartSaving(start);
+        setStartSaving(start);
     }
 }
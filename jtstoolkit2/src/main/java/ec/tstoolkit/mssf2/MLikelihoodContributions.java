@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.mssf2;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.design.Development;
+import ec.tstoolkit.ssf2.State;
+
+/**
+ * Contributions of the periods to the log-likelihood (prediction error
+ * decomposition). For each period, the results contain the sum of the squared
+ * standardized prediction errors (ssq), the log-determinant of the variance of
+ * the prediction errors (ldet) and the number of observations (n). The
+ * log-likelihood of a period, when all the variances are multiplied by a
+ * scale factor s, is -.5*(n*log(2*pi*s) + ldet + ssq/s).
+ *
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public class MLikelihoodContributions implements IMFilteringResults {
+
+    private double[] m_ssq, m_ldet;
+    private int[] m_n;
+
+    /**
+     *
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     *
+     * @param ssf
+     * @param data
+     */
+    @Override
+    public void prepare(final IMSsf ssf, final IMSsfData data) {
+        int n = data.getCount();
+        m_ssq = new double[n];
+        m_ldet = new double[n];
+        m_n = new int[n];
+    }
+
+    /**
+     *
+     * @param t
+     * @param state
+     */
+    @Override
+    public void save(final int t, final MState state) {
+        DataBlock diag = state.F.diagonal();
+        double ssq = 0, ldet = 0;
+        int n = 0;
+        for (int i = 0; i < state.E.getLength(); ++i) {
+            double r = diag.get(i), e = state.E.get(i);
+            // same rules as the prediction error decomposition
+            if (r == 0 || (Math.abs(r) < State.EPS && Math.abs(e) < State.EPS)) {
+                continue;
+            }
+            ssq += e * e;
+            ldet += Math.log(r * r);
+            ++n;
+        }
+        m_ssq[t] = ssq;
+        m_ldet[t] = ldet;
+        m_n[t] = n;
+    }
+
+    /**
+     *
+     * @return The number of periods
+     */
+    public int getCount() {
+        return m_n == null ? 0 : m_n.length;
+    }
+
+    /**
+     *
+     * @param t
+     * @return
+     */
+    public double getSsqErr(final int t) {
+        return m_ssq[t];
+    }
+
+    /**
+     *
+     * @param t
+     * @return
+     */
+    public double getLogDeterminant(final int t) {
+        return m_ldet[t];
+    }
+
+    /**
+     *
+     * @param t
+     * @return
+     */
+    public int getObsCount(final int t) {
+        return m_n[t];
+    }
+}
@@ -29,14 +29,14 @@ import ec.tstoolkit.maths.matrices.SymmetricMatrix;
  */
 public class MSmoother {
 
-    private boolean m_bvar = true;
+    private boolean m_bvar = true, m_univariate, m_sqrt;
     private DataBlock m_a;
     private SubMatrix m_P;
     private Matrix m_V;
     private IMSsf m_ssf;
     private IMSsfData m_data;
     private MFilteringResults m_frslts;
-    private MSmoothingResults m_srslts;
+    private IMSmoothingResults m_srslts;
     private int m_pos, m_n, m_v, m_stop;
     private DataBlock m_r, m_E;
     private SubMatrix m_K;
@@ -45,6 +45,7 @@ public class MSmoother {
     // 
     private DataBlock m_tmp, m_vtmp;
     private boolean[] m_missing;
+    private MWorkspace m_ws;
 
     /**
      *
@@ -90,6 +91,47 @@ public class MSmoother {
     }
 
     /**
+     *
+     * @return
+     */
+    public boolean isUnivariate() {
+        return m_univariate;
+    }
+
+    /**
+     * Uses the univariate treatment of the observations (UnivariateMFilter)
+     * in the filtering step. The usual filter is still used for models with a
+     * non diagonal measurement variance
+     *
+     * @param value
+     */
+    public void setUnivariate(boolean value) {
+        m_univariate = value;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isSquareRoot() {
+        return m_sqrt;
+    }
+
+    /**
+     * Uses the square root filter (ArrayFilter) in the filtering step, when
+     * the model provides an array representation (IArraySsf)
+     *
+     * @param value
+     */
+    public void setSquareRoot(boolean value) {
+        m_sqrt = value;
+    }
+
+    /**
+     * Restricts the smoothing to the window [stop, n[. The backward
+     * recursion stops at the given position and, when the filtering is done
+     * by the smoother, the filtering results are only saved from that
+     * position.
      *
      * @param stop
      */
@@ -105,6 +147,25 @@ public class MSmoother {
         return m_stop;
     }
 
+    /**
+     *
+     * @return
+     */
+    public MWorkspace getWorkspace() {
+        return m_ws;
+    }
+
+    /**
+     * Sets a workspace, which will be used (by the smoother and by the
+     * filter) instead of new objects when it is compatible with the processed
+     * model. The filtering results are then stored in the workspace.
+     *
+     * @param ws
+     */
+    public void setWorkspace(MWorkspace ws) {
+        m_ws = ws;
+    }
+
     /**
      *
      */
@@ -112,6 +173,28 @@ public class MSmoother {
         m_pos = m_data.getCount() - 1;
         m_n = m_ssf.getStateDim();
         m_v = m_ssf.getVarsCount();
+        if (m_ws != null && m_ws.isCompatible(m_ssf, m_data)) {
+            m_r = m_ws.m_r;
+            m_tmp = m_ws.m_tmp;
+            m_vtmp = m_ws.m_vtmp;
+            m_missing = m_ws.m_missing;
+            m_F = m_ws.m_F;
+            m_E = m_ws.m_E;
+            m_a = m_ws.m_a;
+            m_Z = m_ws.m_Z;
+            m_Zl = m_ws.m_Zl;
+            m_r.set(0);
+            if (m_bvar) {
+                m_V = m_ws.m_V;
+                m_N = m_ws.m_N;
+                m_L = m_ws.m_L;
+                m_T = m_ws.m_T;
+                m_V.set(0);
+                m_N.set(0);
+            }
+            m_srslts.prepare(m_data.getCount(), m_n, m_v);
+            return;
+        }
         m_r = new DataBlock(m_n);
         m_tmp = new DataBlock(m_n);
         m_vtmp = new DataBlock(m_v);
@@ -216,12 +299,43 @@ public class MSmoother {
      */
     public boolean process(final IMSsf ssf, final IMSsfData data,
             final MFilteringResults frslts, final MSmoothingResults rslts) {
+        rslts.setSaveP(m_bvar);
+        if (rslts.getSavingStart() < m_stop) {
+            // nothing is smoothed before the stop position
+            rslts.setSavingStart(m_stop);
+        }
+        return smooth(ssf, data, frslts, rslts);
+    }
+
+    /**
+     * Smoothing without storage of the results: the smoothed states (and
+     * their variances if isCalcVariance()) are passed to rslts period by
+     * period, from the last period to the stop position. Only the storage is
+     * saved: when the variances are required, the N recursion and the
+     * computation of P(t|T) = P - P*N*P are still done for each period.
+     *
+     * @param ssf
+     * @param data
+     * @param frslts
+     * @param rslts
+     * @return
+     */
+    public boolean process(final IMSsf ssf, final IMSsfData data,
+            final MFilteringResults frslts, final IMSmoothingResults rslts) {
+        if (rslts instanceof MSmoothingResults) {
+            return process(ssf, data, frslts, (MSmoothingResults) rslts);
+        } else {
+            return smooth(ssf, data, frslts, rslts);
+        }
+    }
+
+    private boolean smooth(final IMSsf ssf, final IMSsfData data,
+            final MFilteringResults frslts, final IMSmoothingResults rslts) {
         clear();
         m_ssf = ssf;
         m_data = data;
         m_frslts = frslts;
         m_srslts = rslts;
-        m_srslts.setSaveP(m_bvar);
         initSmoother();
         if (m_ssf.isTimeInvariant()) {
             loadModelInfo();
@@ -247,16 +361,54 @@ public class MSmoother {
      * @return
      */
     public boolean process(final IMSsf ssf, final IMSsfData data, final MSmoothingResults rslts) {
+        MFilteringResults frslts = filter(ssf, data, rslts != null && rslts.isMappedStorage());
+        return frslts != null && process(ssf, data, frslts, rslts);
+    }
+
+    /**
+     *
+     * @param ssf
+     * @param data
+     * @param rslts
+     * @return
+     */
+    public boolean process(final IMSsf ssf, final IMSsfData data, final IMSmoothingResults rslts) {
+        MFilteringResults frslts = filter(ssf, data, false);
+        return frslts != null && process(ssf, data, frslts, rslts);
+    }
+
+    private MFilteringResults filter(final IMSsf ssf, final IMSsfData data, final boolean mapped) {
         m_ssf = ssf;
         m_data = data;
-        MFilteringResults frslts = new MFilteringResults();
-        frslts.getVarianceFilter().setSavingK(true);
-        frslts.getVarianceFilter().setSavingP(true);
+        MFilteringResults frslts;
         MFilter filter = new MFilter();
-        if (!filter.process(ssf, data, frslts)) {
-            return false;
+        if (m_ws != null && m_ws.isCompatible(ssf, data)) {
+            frslts = m_ws.m_frslts;
+            filter.setWorkspace(m_ws);
+        } else {
+            frslts = new MFilteringResults();
+            frslts.getVarianceFilter().setSavingK(true);
+            frslts.getVarianceFilter().setSavingP(true);
+            if (mapped) {
+                frslts.getVarianceFilter().setMappedStorage(true);
+            }
+        }
+        if (frslts.getStartSaving() != m_stop) {
+            // the backward recursion doesn't use the previous periods
+            frslts.setStartSaving(m_stop);
+        }
+        boolean ok;
+        if (m_sqrt && ssf instanceof IArraySsf) {
+            ArrayFilter afilter = new ArrayFilter();
+            ok = afilter.process((IArraySsf) ssf, data, frslts);
+        } else if (m_univariate && UnivariateMFilter.isDiagonal(ssf, data.getCount())) {
+            UnivariateMFilter ufilter = new UnivariateMFilter();
+            ufilter.setFullState(true);
+            ok = ufilter.process(ssf, data, frslts);
+        } else {
+            ok = filter.process(ssf, data, frslts);
         }
-        return process(ssf, data, frslts, rslts);
+        return ok ? frslts : null;
     }
 
     /**
@@ -28,12 +28,14 @@ import ec.tstoolkit.maths.matrices.SymmetricMatrix;
  *
  * @author Jean Palate
  */
-public class MSmoothingResults {
+public class MSmoothingResults implements IMSmoothingResults {
 
     private int m_v, m_n, m_d;
     private DataBlockStorage m_a, m_r;
     private MatrixStorage m_P, m_N;
-    private boolean m_bP, m_bA = true, m_bR, m_bN;
+    // packed storage of the lower triangular part of P
+    private PackedMatrixStorage m_Pp;
+    private boolean m_bP, m_bA = true, m_bR, m_bN, m_packed, m_single, m_mapped;
     private int m_start;
 
     /**
@@ -71,6 +73,15 @@ public class MSmoothingResults {
     public void clear() {
         m_a = null;
         m_P = null;
+        if (m_Pp != null) {
+            // memory-mapped storage
+            m_Pp.release();
+            m_Pp = null;
+        }
+    }
+
+    private boolean hasP() {
+        return m_P != null || m_Pp != null;
     }
 
     /**
@@ -94,7 +105,9 @@ public class MSmoothingResults {
      * @return
      */
     public DataBlock componentCovar(int i, int j) {
-        int len = m_n - m_start;
+        if (m_Pp != null) {
+            return m_Pp.item(i, j);
+        }
         return m_P.item(i, j);
     }
 
@@ -104,7 +117,7 @@ public class MSmoothingResults {
      * @return
      */
     public double[] componentStdev(int idx) {
-        if (m_P == null) {
+        if (!hasP()) {
             return null;
         }
         double[] c = new double[m_n - m_start];
@@ -121,7 +134,7 @@ public class MSmoothingResults {
      * @return
      */
     public DataBlock componentVar(int idx) {
-        if (m_P == null) {
+        if (!hasP()) {
             return null;
         }
         return componentCovar(idx, idx);
@@ -145,12 +158,78 @@ public class MSmoothingResults {
 
     /**
      *
-     * @return
+     * @return The variances of the smoothed states. Null when the packed
+     * storage is used
      */
     public MatrixStorage getSmoothedStatesVariance() {
         return m_P;
     }
 
+    /**
+     *
+     * @return
+     */
+    public boolean isPackedStorage() {
+        return m_packed;
+    }
+
+    /**
+     * Stores only the lower triangular part of the (symmetric) variances of
+     * the smoothed states. P(t) then returns new matrices
+     *
+     * @param value
+     */
+    public void setPackedStorage(boolean value) {
+        if (m_packed != value) {
+            m_packed = value;
+            clear();
+        }
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isSinglePrecision() {
+        return m_single;
+    }
+
+    /**
+     * Stores the variances of the smoothed states in single precision (packed
+     * storage only). Should only be used for displayed results
+     *
+     * @param value
+     */
+    public void setSinglePrecision(boolean value) {
+        if (m_single != value) {
+            m_single = value;
+            clear();
+        }
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isMappedStorage() {
+        return m_mapped;
+    }
+
+    /**
+     * Stores the variances of the smoothed states (packed, double precision)
+     * in a memory-mapped temporary file instead of the heap, for long samples.
+     * The filtering results computed by the smoother use the same storage.
+     * The usual packed storage is used if the file can't be created
+     *
+     * @param value
+     */
+    public void setMappedStorage(boolean value) {
+        if (m_mapped != value) {
+            m_mapped = value;
+            clear();
+        }
+    }
+
     /**
      *
      * @return
@@ -172,8 +251,10 @@ public class MSmoothingResults {
      * @param value
      */
     public void setSaveP(boolean value) {
-        m_bP = value;
-        clear();
+        if (m_bP != value) {
+            m_bP = value;
+            clear();
+        }
     }
 
     /**
@@ -181,8 +262,10 @@ public class MSmoothingResults {
      * @param start
      */
     public void setSavingStart(int start) {
-        m_start = start;
-        clear();
+        if (m_start != start) {
+            m_start = start;
+            clear();
+        }
     }
 
     /**
@@ -191,7 +274,13 @@ public class MSmoothingResults {
      * @return
      */
     public SubMatrix P(int idx) {
-        return (m_P == null || idx < m_start) ? null : m_P.matrix(idx - m_start);
+        if (idx < m_start) {
+            return null;
+        } else if (m_Pp != null) {
+            return m_Pp.matrix(idx - m_start);
+        } else {
+            return m_P == null ? null : m_P.matrix(idx - m_start);
+        }
     }
 
     /**
@@ -200,8 +289,14 @@ public class MSmoothingResults {
      * @param d
      * @param v
      */
+    @Override
     public void prepare(int n, int d, int v) {
         int nz = n - m_start;
+        if (n == m_n && d == m_d && (!m_bA || m_a != null) && (!m_bP || hasP())) {
+            // same dimensions: the storages are re-used
+            m_v = v;
+            return;
+        }
         m_n = n;
         m_d = d;
         m_v = v;
@@ -210,7 +305,14 @@ public class MSmoothingResults {
             m_a = new DataBlockStorage(m_d, nz);
         }
         if (m_bP) {
-            m_P = new MatrixStorage(m_d, nz);
+            if (m_mapped) {
+                m_Pp = PackedMatrixStorage.createMapped(m_d, nz, true);
+            }
+            if (m_Pp == null && (m_packed || m_mapped)) {
+                m_Pp = new PackedMatrixStorage(m_d, nz, true, m_single);
+            } else if (m_Pp == null) {
+                m_P = new MatrixStorage(m_d, nz);
+            }
         }
     }
 
@@ -220,6 +322,7 @@ public class MSmoothingResults {
      * @param a
      * @param p
      */
+    @Override
     public void save(final int pos, DataBlock a, Matrix p) {
         int np = pos - m_start;
         if (np < 0) {
@@ -229,7 +332,11 @@ public class MSmoothingResults {
             m_a.save(np, a);
         }
         if (m_bP && p != null) {
-            m_P.save(np, p);
+            if (m_Pp != null) {
+                m_Pp.save(np, p);
+            } else {
+                m_P.save(np, p);
+            }
         }
     }
 
@@ -277,7 +384,7 @@ public class MSmoothingResults {
      * @return
      */
     public double[] zvariance(DataBlock z) {
-        if (m_P == null) {
+        if (!hasP()) {
             return null;
         }
         int iz = check(z);
@@ -285,8 +392,16 @@ public class MSmoothingResults {
         if (iz >= 0) {
             componentVar(iz).copyTo(var, 0);
         } else if (m_d == z.getLength()) {
-            for (int i = 0; i < m_n - m_start; ++i) {
-                var[i] = SymmetricMatrix.quadraticForm(m_P.matrix(i), z);
+            if (m_Pp != null) {
+                Matrix tmp = new Matrix(m_d, m_d);
+                for (int i = 0; i < m_n - m_start; ++i) {
+                    m_Pp.copyTo(i, tmp.subMatrix());
+                    var[i] = SymmetricMatrix.quadraticForm(tmp.subMatrix(), z);
+                }
+            } else {
+                for (int i = 0; i < m_n - m_start; ++i) {
+                    var[i] = SymmetricMatrix.quadraticForm(m_P.matrix(i), z);
+                }
             }
         }
         return var;
@@ -299,6 +414,10 @@ public class MSmoothingResults {
      * @return
      */
     public double zvariance(int idx, DataBlock z) {
-        return m_P == null || idx < m_start ? Double.NaN : SymmetricMatrix.quadraticForm(m_P.matrix(idx), z);
+        if (!hasP() || idx < m_start) {
+            return Double.NaN;
+        }
+        SubMatrix p = m_Pp != null ? m_Pp.matrix(idx) : m_P.matrix(idx);
+        return SymmetricMatrix.quadraticForm(p, z);
     }
 }
@@ -29,6 +29,8 @@ import ec.tstoolkit.eco.Likelihood;
 public class MSsfAlgorithm extends AbstractMSsfAlgorithm
 	implements IMSsfAlgorithm {
 
+    private boolean m_univariate, m_collapsed, m_sqrt;
+
     /**
      * 
      */
@@ -36,7 +38,67 @@ public class MSsfAlgorithm extends AbstractMSsfAlgorithm
     {
     }
 
+    /**
+     *
+     * @return
+     */
+    public boolean isUnivariate()
+    {
+	return m_univariate;
+    }
+
+    /**
+     * Uses the univariate treatment of the observations (UnivariateMFilter)
+     * instead of the usual multivariate filter. The usual filter is still used
+     * for models with a non diagonal measurement variance
+     * @param value
+     */
+    public void setUnivariate(final boolean value)
+    {
+	m_univariate = value;
+    }
+
      /**
+     *
+     * @return
+     */
+    public boolean isCollapsed()
+    {
+	return m_collapsed;
+    }
+
+    /**
+     * Computes the likelihood on the collapsed model (see CollapsedMSsf),
+     * when it is possible. The model should have a diagonal measurement
+     * variance
+     * @param value
+     */
+    public void setCollapsed(final boolean value)
+    {
+	m_collapsed = value;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isSquareRoot()
+    {
+	return m_sqrt;
+    }
+
+    /**
+     * Uses the square root filter (ArrayFilter), which is more robust for
+     * near-singular models, when the model provides an array representation
+     * (IArraySsf). Slower than the usual filter
+     * @param value
+     */
+    public void setSquareRoot(final boolean value)
+    {
+	m_sqrt = value;
+    }
+
+    /**
      *
      * @param ssf
      * @param data
@@ -44,12 +106,31 @@ public class MSsfAlgorithm extends AbstractMSsfAlgorithm
      */
     @Override
     public DefaultLikelihoodEvaluation<Likelihood> evaluate(IMSsf ssf, IMSsfData data) {
-	MFilter filter = new MFilter();
 	MPredictionErrorDecomposition pred = new MPredictionErrorDecomposition(
 		true);
-	if (filter.process(ssf, data, pred))
-	    return calcLikelihood(pred);
-	else
+	CollapsedMSsf cssf = m_collapsed ? CollapsedMSsf.create(ssf, data) : null;
+	if (cssf != null) {
+	    ssf = cssf;
+	    data = cssf.getData();
+	}
+	boolean ok;
+	if (m_sqrt && ssf instanceof IArraySsf) {
+	    ArrayFilter filter = new ArrayFilter();
+	    ok = filter.process((IArraySsf) ssf, data, pred);
+	} else if (m_univariate && UnivariateMFilter.isDiagonal(ssf, data.getCount())) {
+	    UnivariateMFilter filter = new UnivariateMFilter();
+	    ok = filter.process(ssf, data, pred);
+	} else {
+	    MFilter filter = new MFilter();
+	    ok = filter.process(ssf, data, pred);
+	}
+	if (!ok)
 	    return null;
+	if (cssf != null) {
+	    cssf.addResiduals(pred);
+	    return calcLikelihood(pred, cssf.getResiduals());
+	}
+	else
+	    return calcLikelihood(pred);
     }
 }
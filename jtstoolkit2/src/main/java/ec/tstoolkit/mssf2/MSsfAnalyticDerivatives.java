@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.mssf2;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.data.IReadDataBlock;
+import ec.tstoolkit.design.Development;
+import ec.tstoolkit.eco.Likelihood;
+import ec.tstoolkit.maths.matrices.SubMatrix;
+import ec.tstoolkit.maths.realfunctions.IFunctionDerivatives;
+
+/**
+ * Derivatives of a MSsfFunction that uses an analytic score. The objective
+ * function is minus the concentrated log-likelihood, so that the gradient is
+ * minus the score. The Hessian is still computed by numerical differentiation.
+ *
+ * @param <S>
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public class MSsfAnalyticDerivatives<S extends IMSsf> implements IFunctionDerivatives {
+
+    private final MSsfFunction<S> m_fn;
+    private final MSsfFunctionInstance<S> m_pt;
+    private final DataBlock m_grad;
+
+    /**
+     * Creates the derivatives for a given point
+     *
+     * @param <S>
+     * @param fn The function. Its algorithm should compute the log-likelihood
+     * (not the sum of squares) by maximum likelihood
+     * @param pt
+     * @param score
+     * @return The derivatives or null if the score can't be computed
+     */
+    public static <S extends IMSsf> MSsfAnalyticDerivatives<S> create(final MSsfFunction<S> fn,
+            final MSsfFunctionInstance<S> pt, final IMSsfScore<S> score) {
+        if (!(fn.algorithm instanceof AbstractMSsfAlgorithm)) {
+            return null;
+        }
+        AbstractMSsfAlgorithm algorithm = (AbstractMSsfAlgorithm) fn.algorithm;
+        if (algorithm.isUsingSsq() || !algorithm.isUsingML()) {
+            return null;
+        }
+        Likelihood ll = pt.getLikelihood();
+        if (ll == null) {
+            return null;
+        }
+        IReadDataBlock g = score.score(pt.ssf, pt.getParameters(), fn.data, ll);
+        if (g == null) {
+            return null;
+        }
+        DataBlock grad = new DataBlock(g);
+        grad.chs();
+        return new MSsfAnalyticDerivatives<>(fn, pt, grad);
+    }
+
+    private MSsfAnalyticDerivatives(final MSsfFunction<S> fn, final MSsfFunctionInstance<S> pt, final DataBlock grad) {
+        m_fn = fn;
+        m_pt = pt;
+        m_grad = grad;
+    }
+
+    @Override
+    public IReadDataBlock getGradient() {
+        return m_grad;
+    }
+
+    @Override
+    public void getHessian(final SubMatrix hessian) {
+        // the perturbed points are not cached
+        new ParallelNumericalDerivatives(m_fn.uncached(), m_pt, true, m_fn.pool()).getHessian(hessian);
+    }
+}
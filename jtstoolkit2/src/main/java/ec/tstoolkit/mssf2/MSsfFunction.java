@@ -26,8 +26,10 @@ import ec.tstoolkit.maths.realfunctions.IParametricMapping;
 import ec.tstoolkit.maths.realfunctions.ISsqFunction;
 import ec.tstoolkit.maths.realfunctions.ISsqFunctionDerivatives;
 import ec.tstoolkit.maths.realfunctions.ISsqFunctionInstance;
-import ec.tstoolkit.maths.realfunctions.NumericalDerivatives;
-import ec.tstoolkit.maths.realfunctions.SsqNumericalDerivatives;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  *
@@ -48,6 +50,21 @@ public class MSsfFunction<S extends IMSsf> implements IFunction, ISsqFunction {
      *
      */
     public final IMSsfData data;
+    /**
+     * Default number of evaluations kept in the cache
+     */
+    public static final int DEF_CACHE_SIZE = 16;
+    private ForkJoinPool m_pool;
+    private IMSsfScore<S> m_score;
+    private int m_cachesize = DEF_CACHE_SIZE;
+    private final LinkedHashMap<Point, MSsfFunctionInstance<S>> m_cache = new LinkedHashMap<Point, MSsfFunctionInstance<S>>(16, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Point, MSsfFunctionInstance<S>> eldest) {
+            return size() > m_cachesize;
+        }
+    };
+    private long m_hits, m_misses;
+    private final Uncached m_uncached = new Uncached();
 
     /**
      *
@@ -64,17 +81,162 @@ public class MSsfFunction<S extends IMSsf> implements IFunction, ISsqFunction {
 
     @Override
     public MSsfFunctionInstance<S> evaluate(IReadDataBlock parameters) {
-        return new MSsfFunctionInstance<>(this, parameters);
+        if (m_cachesize <= 0) {
+            return new MSsfFunctionInstance<>(this, parameters);
+        }
+        Point key = new Point(parameters);
+        synchronized (m_cache) {
+            MSsfFunctionInstance<S> cached = m_cache.get(key);
+            if (cached != null) {
+                ++m_hits;
+                return cached;
+            }
+            ++m_misses;
+        }
+        // the filter is run outside the lock (parallel derivatives)
+        MSsfFunctionInstance<S> instance = new MSsfFunctionInstance<>(this, parameters);
+        synchronized (m_cache) {
+            m_cache.put(key, instance);
+        }
+        return instance;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getCacheSize() {
+        return m_cachesize;
+    }
+
+    /**
+     * Maximum number of evaluations kept in the cache (least recently used
+     * evaluations are removed first). The minimizers often evaluate the same
+     * parameters several times (starting point, line searches), which avoids
+     * new runs of the filter. 0 to disable the cache. The perturbed points of
+     * the numerical derivatives are never cached.
+     *
+     * @param size
+     */
+    public void setCacheSize(int size) {
+        synchronized (m_cache) {
+            m_cachesize = size;
+            if (size <= 0) {
+                m_cache.clear();
+            } else {
+                while (m_cache.size() > size) {
+                    m_cache.remove(m_cache.keySet().iterator().next());
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the cached evaluations and resets the counters
+     */
+    public void clearCache() {
+        synchronized (m_cache) {
+            m_cache.clear();
+            m_hits = 0;
+            m_misses = 0;
+        }
+    }
+
+    /**
+     *
+     * @return The number of evaluations found in the cache
+     */
+    public long getCacheHits() {
+        synchronized (m_cache) {
+            return m_hits;
+        }
+    }
+
+    /**
+     *
+     * @return The number of evaluations that required a run of the filter
+     */
+    public long getCacheMisses() {
+        synchronized (m_cache) {
+            return m_misses;
+        }
+    }
+
+    /**
+     *
+     * @return
+     */
+    public ForkJoinPool getDerivativesPool() {
+        return m_pool;
+    }
+
+    /**
+     * Pool used to compute in parallel the function evaluations of the
+     * numerical derivatives. The derivatives are computed sequentially when
+     * the pool is null (default) or when its parallelism is 1. The pool
+     * doesn't change the numerical derivatives (same steps and same
+     * differences).
+     *
+     * @param pool
+     */
+    public void setDerivativesPool(ForkJoinPool pool) {
+        m_pool = pool;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public IMSsfScore<S> getScore() {
+        return m_score;
+    }
+
+    /**
+     * Analytic score of the model. When it is set, the gradient of the
+     * function (not of the sum of squares) is computed from the score instead
+     * of by numerical differentiation.
+     *
+     * @param score
+     */
+    public void setScore(IMSsfScore<S> score) {
+        m_score = score;
+    }
+
+    /**
+     * The function without the cache, used for the perturbed points of the
+     * numerical derivatives
+     *
+     * @return
+     */
+    IFunction uncached() {
+        return m_uncached;
+    }
+
+    /**
+     * The pool used by the numerical derivatives (null for a sequential
+     * computation)
+     *
+     * @return
+     */
+    ForkJoinPool pool() {
+        return m_pool != null && m_pool.getParallelism() > 1 ? m_pool : null;
     }
 
     @Override
-    public NumericalDerivatives getDerivatives(IFunctionInstance point) {
-        return new NumericalDerivatives(this, point, false, true);
+    public IFunctionDerivatives getDerivatives(IFunctionInstance point) {
+        if (m_score != null && point instanceof MSsfFunctionInstance) {
+            MSsfAnalyticDerivatives<S> d = MSsfAnalyticDerivatives.create(this,
+                    (MSsfFunctionInstance<S>) point, m_score);
+            if (d != null) {
+                return d;
+            }
+        }
+        return new ParallelNumericalDerivatives(m_uncached, point, true, pool());
     }
 
     @Override
-    public SsqNumericalDerivatives getDerivatives(ISsqFunctionInstance point) {
-        return new SsqNumericalDerivatives(this, point, false, true);
+    public ISsqFunctionDerivatives getDerivatives(ISsqFunctionInstance point) {
+        return new ParallelSsqNumericalDerivatives(m_uncached, point, true, pool());
     }
 
     /**
@@ -88,6 +250,67 @@ public class MSsfFunction<S extends IMSsf> implements IFunction, ISsqFunction {
 
     @Override
     public MSsfFunctionInstance<S> ssqEvaluate(IReadDataBlock parameters) {
-        return new MSsfFunctionInstance<>(this, parameters);
+        return evaluate(parameters);
+    }
+
+    /**
+     * The function without the cache. Used for the perturbed points of the
+     * numerical derivatives, which are evaluated only once and which would
+     * otherwise push the points of the minimizer out of the cache
+     */
+    private class Uncached implements IFunction, ISsqFunction {
+
+        @Override
+        public MSsfFunctionInstance<S> evaluate(IReadDataBlock parameters) {
+            return new MSsfFunctionInstance<>(MSsfFunction.this, parameters);
+        }
+
+        @Override
+        public IFunctionDerivatives getDerivatives(IFunctionInstance point) {
+            return MSsfFunction.this.getDerivatives(point);
+        }
+
+        @Override
+        public ISsqFunctionDerivatives getDerivatives(ISsqFunctionInstance point) {
+            return MSsfFunction.this.getDerivatives(point);
+        }
+
+        @Override
+        public IParametersDomain getDomain() {
+            return mapper;
+        }
+
+        @Override
+        public MSsfFunctionInstance<S> ssqEvaluate(IReadDataBlock parameters) {
+            return evaluate(parameters);
+        }
+    }
+
+    /**
+     * Key of the cache: copy of the parameters, compared bit by bit
+     */
+    private static class Point {
+
+        private final double[] p;
+        private final int hash;
+
+        private Point(IReadDataBlock parameters) {
+            p = new double[parameters.getLength()];
+            for (int i = 0; i < p.length; ++i) {
+                p[i] = parameters.get(i);
+            }
+            hash = Arrays.hashCode(p);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Point && hash == ((Point) obj).hash
+                    && Arrays.equals(p, ((Point) obj).p);
+        }
     }
 }
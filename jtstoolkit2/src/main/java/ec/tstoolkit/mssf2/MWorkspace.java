@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.mssf2;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.design.Development;
+import ec.tstoolkit.maths.matrices.Matrix;
+
+/**
+ * Working storage of the multivariate filter and smoother. A workspace can be
+ * re-used by successive calls of MFilter/MSmoother on models and data with
+ * the same dimensions (state, variables, periods), which avoids any new
+ * allocation. The results of a call (filtering and smoothing results
+ * obtained through the workspace) are overwritten by the next call.
+ *
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public class MWorkspace {
+
+    final int m_dim, m_nvars, m_n;
+    // filter
+    final MState m_state;
+    final Matrix m_Pprev;
+    final boolean[] m_pattern;
+    final MFilteringResults m_frslts;
+    final MSmoothingResults m_srslts;
+    // smoother
+    final DataBlock m_r, m_tmp, m_vtmp, m_E, m_a;
+    final Matrix m_F, m_Z, m_Zl, m_V, m_N, m_L, m_T;
+    final boolean[] m_missing;
+
+    /**
+     *
+     * @param dim State dimension
+     * @param nvars Number of variables
+     * @param n Number of periods
+     */
+    public MWorkspace(final int dim, final int nvars, final int n) {
+        m_dim = dim;
+        m_nvars = nvars;
+        m_n = n;
+        m_state = new MState(dim, nvars);
+        m_Pprev = new Matrix(dim, dim);
+        m_pattern = new boolean[nvars];
+        m_frslts = new MFilteringResults();
+        m_frslts.getVarianceFilter().setSavingK(true);
+        m_frslts.getVarianceFilter().setSavingP(true);
+        m_srslts = new MSmoothingResults();
+        m_r = new DataBlock(dim);
+        m_tmp = new DataBlock(dim);
+        m_vtmp = new DataBlock(nvars);
+        m_E = new DataBlock(nvars);
+        m_a = new DataBlock(dim);
+        m_F = new Matrix(nvars, nvars);
+        m_Z = new Matrix(nvars, dim);
+        m_Zl = new Matrix(nvars, dim);
+        m_V = new Matrix(dim, dim);
+        m_N = new Matrix(dim, dim);
+        m_L = new Matrix(dim, dim);
+        m_T = new Matrix(dim, dim);
+        m_missing = new boolean[nvars];
+    }
+
+    /**
+     *
+     * @param ssf
+     * @param data
+     * @return
+     */
+    public static MWorkspace create(final IMSsf ssf, final IMSsfData data) {
+        return new MWorkspace(ssf.getStateDim(), ssf.getVarsCount(), data.getCount());
+    }
+
+    /**
+     * Checks that the workspace can be used for the given model/data
+     *
+     * @param ssf
+     * @param data
+     * @return
+     */
+    public boolean isCompatible(final IMSsf ssf, final IMSsfData data) {
+        return ssf.getStateDim() == m_dim && ssf.getVarsCount() == m_nvars
+                && data.getCount() == m_n;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getStateDim() {
+        return m_dim;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getVarsCount() {
+        return m_nvars;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getCount() {
+        return m_n;
+    }
+
+    /**
+     * Filtering results (with K and P) used by the smoother
+     *
+     * @return
+     */
+    public MFilteringResults getFilteringResults() {
+        return m_frslts;
+    }
+
+    /**
+     * Smoothing results that can be re-used by successive calls of the
+     * smoother
+     *
+     * @return
+     */
+    public MSmoothingResults getSmoothingResults() {
+        return m_srslts;
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.mssf2;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.design.Development;
+import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.maths.matrices.SubMatrix;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Storage of a sequence of square matrices that are symmetric (variances) or
+ * lower triangular (Cholesky factors). Only the lower triangular part of each
+ * matrix is stored (packed by rows), in double or in single precision. The
+ * single precision should only be used for results that are displayed.
+ *
+ * The matrices can also be stored outside the heap, in a memory-mapped
+ * temporary file (see createMapped), for very long samples. The temporary
+ * file of such a storage should be released (see release) by its owner as soon
+ * as it is no longer needed.
+ *
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public class PackedMatrixStorage {
+
+    private final int m_dim, m_n, m_np;
+    private final boolean m_sym;
+    private final double[] m_data;
+    private final float[] m_fdata;
+    // memory-mapped storage: each buffer contains m_nbuffer matrices
+    private final DoubleBuffer[] m_mdata;
+    private final int m_nbuffer;
+    private final File m_file;
+
+    /**
+     *
+     * @param dim Dimension of the matrices
+     * @param n Number of matrices
+     * @param symmetric True for symmetric matrices, false for lower
+     * triangular matrices
+     * @param single True for single precision
+     */
+    public PackedMatrixStorage(final int dim, final int n, final boolean symmetric, final boolean single) {
+        m_dim = dim;
+        m_n = n;
+        m_np = dim * (dim + 1) / 2;
+        m_sym = symmetric;
+        if (single) {
+            m_fdata = new float[m_np * n];
+            m_data = null;
+        } else {
+            m_data = new double[m_np * n];
+            m_fdata = null;
+        }
+        m_mdata = null;
+        m_nbuffer = 0;
+        m_file = null;
+    }
+
+    private PackedMatrixStorage(final int dim, final int n, final boolean symmetric,
+            final MappedByteBuffer[] buffers, final int nbuffer, final File file) {
+        m_dim = dim;
+        m_n = n;
+        m_np = dim * (dim + 1) / 2;
+        m_sym = symmetric;
+        m_data = null;
+        m_fdata = null;
+        m_mdata = new DoubleBuffer[buffers.length];
+        for (int i = 0; i < buffers.length; ++i) {
+            m_mdata[i] = buffers[i].asDoubleBuffer();
+        }
+        m_nbuffer = nbuffer;
+        m_file = file;
+    }
+
+    /**
+     * Creates a storage in a memory-mapped temporary file (double precision),
+     * which is deleted when the application exits.
+     *
+     * @param dim Dimension of the matrices
+     * @param n Number of matrices
+     * @param symmetric True for symmetric matrices, false for lower
+     * triangular matrices
+     * @return The new storage or null if the temporary file can't be created
+     */
+    public static PackedMatrixStorage createMapped(final int dim, final int n, final boolean symmetric) {
+        int np = dim * (dim + 1) / 2;
+        // a mapped buffer can't exceed Integer.MAX_VALUE bytes
+        int nbuffer = Math.max(1, Integer.MAX_VALUE / (8 * Math.max(np, 1)));
+        if (nbuffer > n) {
+            nbuffer = Math.max(n, 1);
+        }
+        int nb = (n + nbuffer - 1) / nbuffer;
+        MappedByteBuffer[] buffers = new MappedByteBuffer[nb];
+        File file = null;
+        try {
+            file = File.createTempFile("mstorage", ".tmp");
+            file.deleteOnExit();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                    FileChannel channel = raf.getChannel()) {
+                long size = 8L * np * nbuffer;
+                for (int i = 0; i < nb; ++i) {
+                    // the mapping stays valid after the channel is closed
+                    buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * size, size);
+                }
+            }
+        } catch (IOException err) {
+            if (file != null) {
+                file.delete();
+            }
+            return null;
+        }
+        return new PackedMatrixStorage(dim, n, symmetric, buffers, nbuffer, file);
+    }
+
+    /**
+     * Releases the temporary file of a memory-mapped storage. The file is
+     * deleted (on exit on the systems that don't allow the deletion of a
+     * mapped file). The mapping itself is removed when the storage is garbage
+     * collected, so that the storage remains readable by the objects that
+     * still hold it. Nothing is done for the other storages.
+     */
+    public void release() {
+        if (m_file != null) {
+            m_file.delete();
+        }
+    }
+
+    /**
+     * The temporary file of a memory-mapped storage
+     *
+     * @return The file or null for the other storages
+     */
+    public File getFile() {
+        return m_file;
+    }
+
+    private double value(final int pos, final int k) {
+        if (m_data != null) {
+            return m_data[pos * m_np + k];
+        } else if (m_fdata != null) {
+            return m_fdata[pos * m_np + k];
+        } else {
+            return m_mdata[pos / m_nbuffer].get((pos % m_nbuffer) * m_np + k);
+        }
+    }
+
+    private void value(final int pos, final int k, final double x) {
+        if (m_data != null) {
+            m_data[pos * m_np + k] = x;
+        } else if (m_fdata != null) {
+            m_fdata[pos * m_np + k] = (float) x;
+        } else {
+            m_mdata[pos / m_nbuffer].put((pos % m_nbuffer) * m_np + k, x);
+        }
+    }
+
+    private static int index(final int i, final int j) {
+        return i * (i + 1) / 2 + j;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getDim() {
+        return m_dim;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getCount() {
+        return m_n;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isSymmetric() {
+        return m_sym;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isSinglePrecision() {
+        return m_fdata != null;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isMapped() {
+        return m_mdata != null;
+    }
+
+    /**
+     *
+     * @param pos
+     * @param i
+     * @param j
+     * @return
+     */
+    public double get(final int pos, final int i, final int j) {
+        if (i < j) {
+            return m_sym ? get(pos, j, i) : 0;
+        }
+        return value(pos, index(i, j));
+    }
+
+    /**
+     * Saves the lower triangular part of m
+     *
+     * @param pos
+     * @param m
+     */
+    public void save(final int pos, final SubMatrix m) {
+        int k = 0;
+        for (int i = 0; i < m_dim; ++i) {
+            for (int j = 0; j <= i; ++j, ++k) {
+                value(pos, k, m.get(i, j));
+            }
+        }
+    }
+
+    /**
+     *
+     * @param pos
+     * @param m
+     */
+    public void save(final int pos, final Matrix m) {
+        save(pos, m.subMatrix());
+    }
+
+    /**
+     * Copies the matrix at the given position in m
+     *
+     * @param pos
+     * @param m
+     */
+    public void copyTo(final int pos, final SubMatrix m) {
+        int k = 0;
+        for (int i = 0; i < m_dim; ++i) {
+            for (int j = 0; j <= i; ++j, ++k) {
+                double x = value(pos, k);
+                m.set(i, j, x);
+                if (i != j) {
+                    m.set(j, i, m_sym ? x : 0);
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param pos
+     * @return A new matrix that contains the matrix at the given position
+     */
+    public SubMatrix matrix(final int pos) {
+        Matrix m = new Matrix(m_dim, m_dim);
+        copyTo(pos, m.subMatrix());
+        return m.subMatrix();
+    }
+
+    /**
+     *
+     * @param i
+     * @param j
+     * @return A new data block that contains the item (i, j) of all the
+     * matrices
+     */
+    public DataBlock item(final int i, final int j) {
+        DataBlock x = new DataBlock(m_n);
+        if (i < j && !m_sym) {
+            return x;
+        }
+        int k = i < j ? index(j, i) : index(i, j);
+        for (int pos = 0; pos < m_n; ++pos) {
+            x.set(pos, value(pos, k));
+        }
+        return x;
+    }
+}
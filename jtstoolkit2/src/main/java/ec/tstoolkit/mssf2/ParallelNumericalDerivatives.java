@@ -0,0 +1,197 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.mssf2;
+
+import ec.tstoolkit.BaseException;
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.data.IReadDataBlock;
+import ec.tstoolkit.design.Development;
+import ec.tstoolkit.maths.matrices.SubMatrix;
+import ec.tstoolkit.maths.realfunctions.IFunction;
+import ec.tstoolkit.maths.realfunctions.IFunctionDerivatives;
+import ec.tstoolkit.maths.realfunctions.IFunctionInstance;
+import ec.tstoolkit.maths.realfunctions.IParametersDomain;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Numerical derivatives (forward differences) whose function evaluations
+ * are done in parallel, in a fork-join pool. The perturbed points and the
+ * order of the computations don't depend on the pool, so that the results are
+ * identical to a sequential computation.
+ *
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public class ParallelNumericalDerivatives implements IFunctionDerivatives {
+
+    private final IFunction m_fn;
+    private final IFunctionInstance m_pt;
+    private final ForkJoinPool m_pool;
+    private final boolean m_mul;
+    private final double[] m_h;
+    private double[] m_f;
+
+    /**
+     *
+     * @param fn
+     * @param point
+     * @param mul True if the steps are relative to the parameters
+     * @param pool
+     */
+    public ParallelNumericalDerivatives(final IFunction fn, final IFunctionInstance point,
+            final boolean mul, final ForkJoinPool pool) {
+        m_fn = fn;
+        m_pt = point;
+        m_mul = mul;
+        m_pool = pool;
+        m_h = steps(fn.getDomain(), point.getParameters(), mul);
+    }
+
+    static double[] steps(final IParametersDomain domain, final IReadDataBlock p, final boolean mul) {
+        double[] h = new double[p.getLength()];
+        for (int i = 0; i < h.length; ++i) {
+            double eps = domain.epsilon(p, i);
+            if (mul) {
+                eps *= Math.max(1, Math.abs(p.get(i)));
+            }
+            h[i] = eps;
+        }
+        return h;
+    }
+
+    static DataBlock move(final IReadDataBlock p, final int i, final double hi, final int j, final double hj) {
+        DataBlock np = new DataBlock(p);
+        np.add(i, hi);
+        if (j >= 0) {
+            np.add(j, hj);
+        }
+        return np;
+    }
+
+    /**
+     * Executes the tasks in the pool (or in the current thread if the pool is
+     * null)
+     *
+     * @param <T>
+     * @param pool
+     * @param tasks
+     * @return The results of the tasks, in the same order
+     */
+    static <T> List<T> execute(final ForkJoinPool pool, final List<Callable<T>> tasks) {
+        List<T> rslts = new ArrayList<>(tasks.size());
+        try {
+            if (pool == null) {
+                for (Callable<T> task : tasks) {
+                    rslts.add(task.call());
+                }
+            } else {
+                for (Future<T> future : pool.invokeAll(tasks)) {
+                    rslts.add(future.get());
+                }
+            }
+            return rslts;
+        } catch (ExecutionException err) {
+            Throwable cause = err.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new BaseException(cause.getMessage());
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            throw new BaseException(err.getMessage());
+        } catch (RuntimeException err) {
+            throw err;
+        } catch (Exception err) {
+            throw new BaseException(err.getMessage());
+        }
+    }
+
+    private List<Double> values(final List<DataBlock> points) {
+        List<Callable<Double>> tasks = new ArrayList<>(points.size());
+        for (final DataBlock p : points) {
+            tasks.add(new Callable<Double>() {
+                @Override
+                public Double call() {
+                    return m_fn.evaluate(p).getValue();
+                }
+            });
+        }
+        return execute(m_pool, tasks);
+    }
+
+    private void calcf() {
+        if (m_f != null) {
+            return;
+        }
+        IReadDataBlock p = m_pt.getParameters();
+        List<DataBlock> points = new ArrayList<>(m_h.length);
+        for (int i = 0; i < m_h.length; ++i) {
+            points.add(move(p, i, m_h[i], -1, 0));
+        }
+        List<Double> f = values(points);
+        m_f = new double[m_h.length];
+        for (int i = 0; i < m_f.length; ++i) {
+            m_f[i] = f.get(i);
+        }
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isMultiplicative() {
+        return m_mul;
+    }
+
+    @Override
+    public IReadDataBlock getGradient() {
+        calcf();
+        double f0 = m_pt.getValue();
+        DataBlock g = new DataBlock(m_h.length);
+        for (int i = 0; i < m_h.length; ++i) {
+            g.set(i, (m_f[i] - f0) / m_h[i]);
+        }
+        return g;
+    }
+
+    @Override
+    public void getHessian(final SubMatrix hessian) {
+        calcf();
+        int n = m_h.length;
+        IReadDataBlock p = m_pt.getParameters();
+        List<DataBlock> points = new ArrayList<>(n * (n + 1) / 2);
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j <= i; ++j) {
+                points.add(move(p, i, m_h[i], j, m_h[j]));
+            }
+        }
+        List<Double> f = values(points);
+        double f0 = m_pt.getValue();
+        for (int i = 0, k = 0; i < n; ++i) {
+            for (int j = 0; j <= i; ++j, ++k) {
+                double h = (f.get(k) - m_f[i] - m_f[j] + f0) / (m_h[i] * m_h[j]);
+                hessian.set(i, j, h);
+                hessian.set(j, i, h);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ * 
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved 
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ * 
+ * http://ec.europa.eu/idabc/eupl
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and 
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.mssf2;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.data.IReadDataBlock;
+import ec.tstoolkit.design.Development;
+import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.maths.matrices.SubMatrix;
+import ec.tstoolkit.maths.matrices.SymmetricMatrix;
+import ec.tstoolkit.maths.realfunctions.ISsqFunction;
+import ec.tstoolkit.maths.realfunctions.ISsqFunctionDerivatives;
+import ec.tstoolkit.maths.realfunctions.ISsqFunctionInstance;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Numerical derivatives (forward differences) of a sum of squares, whose
+ * function evaluations are done in parallel, in a fork-join pool. The
+ * Jacobian of the residuals is computed column by column (one evaluation by
+ * parameter); the Hessian is approximated by 2J'J.
+ *
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public class ParallelSsqNumericalDerivatives implements ISsqFunctionDerivatives {
+
+    private final ISsqFunction m_fn;
+    private final ISsqFunctionInstance m_pt;
+    private final ForkJoinPool m_pool;
+    private final double[] m_h;
+    private Matrix m_J;
+
+    /**
+     *
+     * @param fn
+     * @param point
+     * @param mul True if the steps are relative to the parameters
+     * @param pool
+     */
+    public ParallelSsqNumericalDerivatives(final ISsqFunction fn, final ISsqFunctionInstance point,
+            final boolean mul, final ForkJoinPool pool) {
+        m_fn = fn;
+        m_pt = point;
+        m_pool = pool;
+        m_h = ParallelNumericalDerivatives.steps(fn.getDomain(), point.getParameters(), mul);
+    }
+
+    private void calcJ() {
+        if (m_J != null) {
+            return;
+        }
+        IReadDataBlock p = m_pt.getParameters();
+        List<Callable<double[]>> tasks = new ArrayList<>(m_h.length);
+        for (int i = 0; i < m_h.length; ++i) {
+            final DataBlock np = ParallelNumericalDerivatives.move(p, i, m_h[i], -1, 0);
+            tasks.add(new Callable<double[]>() {
+                @Override
+                public double[] call() {
+                    return m_fn.ssqEvaluate(np).getE();
+                }
+            });
+        }
+        List<double[]> e = ParallelNumericalDerivatives.execute(m_pool, tasks);
+        double[] e0 = m_pt.getE();
+        m_J = new Matrix(e0.length, m_h.length);
+        for (int i = 0; i < m_h.length; ++i) {
+            double[] ei = e.get(i);
+            DataBlock col = m_J.column(i);
+            for (int j = 0; j < e0.length; ++j) {
+                col.set(j, (ei[j] - e0[j]) / m_h[i]);
+            }
+        }
+    }
+
+    /**
+     * Jacobian of the residuals
+     *
+     * @return
+     */
+    @Override
+    public Matrix getJacobian() {
+        calcJ();
+        return m_J;
+    }
+
+    @Override
+    public IReadDataBlock getGradient() {
+        calcJ();
+        // g = 2 J'e
+        DataBlock e0 = new DataBlock(m_pt.getE());
+        DataBlock g = new DataBlock(m_h.length);
+        for (int i = 0; i < m_h.length; ++i) {
+            g.set(i, 2 * m_J.column(i).dot(e0));
+        }
+        return g;
+    }
+
+    @Override
+    public void getHessian(final SubMatrix hessian) {
+        calcJ();
+        // H = 2 J'J
+        Matrix h = SymmetricMatrix.XtX(m_J);
+        h.mul(2);
+        hessian.copy(h.subMatrix());
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2013 National Bank of Belgium
+ *
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be approved
+ * by the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+package ec.tstoolkit.mssf2;
+
+import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.design.Development;
+import ec.tstoolkit.maths.matrices.Matrix;
+
+/**
+ * Multivariate filter using the univariate treatment of the observations
+ * (Koopman-Durbin). The measurements are processed one by one, as in the
+ * M2UAdapter (the transition is applied after the last variable of each
+ * period), which requires a diagonal H (see isDiagonal; the filter fails
+ * otherwise). Missing values and variables without measurement (hasZ false)
+ * are simply skipped.
+ *
+ * The results are identical to the results of the usual multivariate filter:
+ * the standardised errors are the univariate errors divided by the square root
+ * of their variance, which are the diagonal elements of the Cholesky factor of
+ * ZPZ'+H. The full Cholesky factor and the gain K (= TPZ'(L')^-1) are only
+ * computed when they are requested (setFullState), for instance for smoothing.
+ *
+ * @author Jean Palate
+ */
+@Development(status = Development.Status.Alpha)
+public class UnivariateMFilter {
+
+    /**
+     *
+     */
+    public static final double Zero = 1e-9;
+
+    private MState m_state;
+    private IMSsf m_ssf;
+    private IMSsfData m_data;
+    private int m_pos, m_end, m_r, m_v;
+    private boolean m_bfull;
+    // filtered state and its variance
+    private DataBlock m_a, m_c;
+    private Matrix m_P;
+
+    /**
+     *
+     */
+    public UnivariateMFilter() {
+    }
+
+    /**
+     *
+     * @return
+     */
+    public MState getState() {
+        return m_state;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isFullState() {
+        return m_bfull;
+    }
+
+    /**
+     * Computes also the full Cholesky factor F and the gain K of the state.
+     * Only the diagonal of F and the errors E are computed otherwise, which is
+     * enough for the likelihood.
+     *
+     * @param value
+     */
+    public void setFullState(final boolean value) {
+        m_bfull = value;
+    }
+
+    /**
+     * Checks that the variance of the measurement errors is diagonal, which is
+     * required by the univariate treatment of the observations. For time
+     * varying models, the first n periods are checked.
+     *
+     * @param ssf
+     * @param n
+     * @return
+     */
+    public static boolean isDiagonal(final IMSsf ssf, final int n) {
+        if (!ssf.hasH()) {
+            return true;
+        }
+        int v = ssf.getVarsCount();
+        Matrix h = new Matrix(v, v);
+        int m = ssf.isTimeInvariant() ? Math.min(n, 1) : n;
+        for (int pos = 0; pos < m; ++pos) {
+            h.set(0);
+            ssf.H(pos, h.subMatrix());
+            if (!h.subMatrix().isDiagonal()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean initFilter() {
+        m_pos = 0;
+        m_r = m_ssf.getStateDim();
+        m_v = m_ssf.getVarsCount();
+        m_end = m_data.getCount();
+        m_a = new DataBlock(m_r);
+        m_c = new DataBlock(m_r);
+        m_P = new Matrix(m_r, m_r);
+        return true;
+    }
+
+    private int initState() {
+        m_state = new MState(m_r, m_v);
+        double[] a0 = m_data.getInitialState();
+        if (a0 != null) {
+            m_state.A.copyFrom(a0, 0);
+        }
+        m_ssf.Pf0(m_state.P.subMatrix());
+        m_ssf.TVT(m_pos, m_state.P.subMatrix());
+        m_ssf.addV(m_pos, m_state.P.subMatrix());
+        return 0;
+    }
+
+    /**
+     * Sequential update of the state with the observations of the current
+     * period. m_a and m_P contain the filtered state and its variance at the
+     * end of the loop. m_state.A and m_state.P are unchanged.
+     */
+    public void update() {
+        m_a.copy(m_state.A);
+        m_P.copy(m_state.P);
+        m_state.E.set(0);
+        m_state.F.set(0);
+        if (m_bfull) {
+            m_state.K.set(0);
+        }
+        for (int i = 0; i < m_v; ++i) {
+            if (m_data.isMissing(i, m_pos) || !m_ssf.hasZ(m_pos, i)) {
+                continue;
+            }
+            // C = PZ', f = ZPZ' + h
+            for (int j = 0; j < m_r; ++j) {
+                m_c.set(j, m_ssf.ZX(m_pos, i, m_P.column(j)));
+            }
+            double f = m_ssf.ZX(m_pos, i, m_c) + m_ssf.H(m_pos, i);
+            if (f < Zero) {
+                continue;
+            }
+            double e = m_data.get(i, m_pos) - m_ssf.ZX(m_pos, i, m_a);
+            double sf = Math.sqrt(f);
+            m_state.E.set(i, e / sf);
+            m_state.F.set(i, i, sf);
+            // a = a + C/f * e, P = P - C*C'/f
+            m_a.addAY(e / f, m_c);
+            m_P.addXaXt(-1 / f, m_c);
+            if (m_bfull) {
+                DataBlock k = m_state.K.column(i);
+                k.copy(m_c);
+                k.mul(1 / sf);
+            }
+        }
+        if (m_bfull) {
+            // F(i,j) = Z(i)C(j)/sqrt(f(j)), K = TC/sqrt(f)
+            for (int j = 0; j < m_v; ++j) {
+                if (m_state.F.get(j, j) == 0) {
+                    continue;
+                }
+                DataBlock k = m_state.K.column(j);
+                for (int i = j + 1; i < m_v; ++i) {
+                    if (m_state.F.get(i, i) != 0) {
+                        m_state.F.set(i, j, m_ssf.ZX(m_pos, i, k));
+                    }
+                }
+            }
+            m_ssf.TM(m_pos, m_state.K.subMatrix());
+        }
+    }
+
+    /**
+     *
+     */
+    public void next() {
+        m_ssf.TX(m_pos, m_a);
+        m_state.A.copy(m_a);
+        m_ssf.TVT(m_pos, m_P.subMatrix());
+        m_ssf.addV(m_pos, m_P.subMatrix());
+        m_state.P.copy(m_P);
+    }
+
+    /**
+     *
+     * @param ssf
+     * @param data
+     * @param rslts
+     * @return
+     */
+    public boolean process(final IMSsf ssf, final IMSsfData data, final IMFilteringResults rslts) {
+        m_ssf = ssf;
+        m_data = data;
+        if (!isDiagonal(ssf, data.getCount()) || !initFilter()) {
+            return false;
+        }
+        m_pos = initState();
+        if (m_pos < 0) {
+            return false;
+        }
+        if (rslts != null) {
+            rslts.prepare(m_ssf, m_data);
+        }
+        if (m_pos < m_end) {
+            do {
+                update();
+                if (rslts != null) {
+                    rslts.save(m_pos, m_state);
+                }
+                next();
+            } while (++m_pos < m_end);
+        }
+        if (rslts != null) {
+            rslts.close();
+        }
+        return true;
+    }
+}
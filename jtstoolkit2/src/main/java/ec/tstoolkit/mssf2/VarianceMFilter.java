@@ -17,8 +17,10 @@
 package ec.tstoolkit.mssf2;
 
 import ec.tstoolkit.design.Development;
+import ec.tstoolkit.maths.matrices.Matrix;
 import ec.tstoolkit.maths.matrices.MatrixStorage;
 import ec.tstoolkit.maths.matrices.SubMatrix;
+import ec.tstoolkit.maths.matrices.SymmetricMatrix;
 
 /**
  *
@@ -31,9 +33,11 @@ public class VarianceMFilter implements IMFilteringResults {
     MatrixStorage m_P;
     MatrixStorage m_K;
     MatrixStorage m_F;
-    int m_n, m_dim;
+    // packed storage (lower triangular part of P and F)
+    PackedMatrixStorage m_Pp, m_Fp;
+    int m_n, m_dim, m_nvars;
     int m_start;
-    boolean m_open, m_bP, m_bK;
+    boolean m_open, m_bP, m_bK, m_packed, m_single, m_mapped;
 
     /**
      *
@@ -67,9 +71,34 @@ public class VarianceMFilter implements IMFilteringResults {
     public void clear() {
         m_n = 0;
         m_dim = 0;
-        m_P = null;
+        m_nvars = 0;
         m_K = null;
+        releaseP();
+        releaseF();
+    }
+
+    /**
+     * Removes the storage of the variances of the states (and the temporary
+     * file of a memory-mapped storage)
+     */
+    private void releaseP() {
+        m_P = null;
+        if (m_Pp != null) {
+            m_Pp.release();
+            m_Pp = null;
+        }
+    }
+
+    /**
+     * Removes the storage of the variances of the innovations (and the
+     * temporary file of a memory-mapped storage)
+     */
+    private void releaseF() {
         m_F = null;
+        if (m_Fp != null) {
+            m_Fp.release();
+            m_Fp = null;
+        }
     }
 
     /**
@@ -86,7 +115,13 @@ public class VarianceMFilter implements IMFilteringResults {
      * @return
      */
     public SubMatrix F(final int t) {
-        return t < m_start ? null : m_F.matrix(t - m_start);
+        if (t < m_start) {
+            return null;
+        } else if (m_Fp != null) {
+            return m_Fp.matrix(t - m_start);
+        } else {
+            return m_F.matrix(t - m_start);
+        }
     }
 
     /**
@@ -111,21 +146,65 @@ public class VarianceMFilter implements IMFilteringResults {
      * @param n
      */
     protected void init(final IMSsf ssf, final int n) {
+        int nvars = ssf.getVarsCount();
+        if ((m_F != null || m_Fp != null) && m_dim == ssf.getStateDim() && m_nvars == nvars && m_n == n) {
+            // same dimensions: the storages are re-used
+            m_open = true;
+            m_ssf = ssf;
+            if (m_bK && m_K == null) {
+                m_K = new MatrixStorage(m_dim, nvars, n - m_start);
+            }
+            if (m_bP && m_P == null && m_Pp == null) {
+                initP();
+            }
+            return;
+        }
         clear();
         m_open = true;
         m_ssf = ssf;
 
         m_dim = ssf.getStateDim();
-        int nvars = ssf.getVarsCount();
+        m_nvars = nvars;
         m_n = n;
-        m_F = new MatrixStorage(nvars, n - m_start);
+        if (m_packed || m_mapped) {
+            m_Fp = newStorage(nvars, n - m_start, false);
+        } else {
+            m_F = new MatrixStorage(nvars, n - m_start);
+        }
 
         if (m_bK) {
             m_K = new MatrixStorage(m_dim, nvars, n - m_start);
         }
         if (m_bP) {
-            m_P = new MatrixStorage(m_dim, n - m_start);
+            initP();
+        }
+    }
+
+    /**
+     * Checks that the storages correspond to the given problem
+     */
+    boolean isStored(final IMSsf ssf, final int n) {
+        return (m_F != null || m_Fp != null) && m_dim == ssf.getStateDim()
+                && m_nvars == ssf.getVarsCount() && m_n == n
+                && (!m_bK || m_K != null) && (!m_bP || m_P != null || m_Pp != null);
+    }
+
+    private void initP() {
+        if (m_packed || m_mapped) {
+            m_Pp = newStorage(m_dim, m_n - m_start, true);
+        } else {
+            m_P = new MatrixStorage(m_dim, m_n - m_start);
+        }
+    }
+
+    private PackedMatrixStorage newStorage(final int dim, final int n, final boolean symmetric) {
+        if (m_mapped) {
+            PackedMatrixStorage storage = PackedMatrixStorage.createMapped(dim, n, symmetric);
+            if (storage != null) {
+                return storage;
+            }
         }
+        return new PackedMatrixStorage(dim, n, symmetric, m_single);
     }
 
     /**
@@ -158,13 +237,75 @@ public class VarianceMFilter implements IMFilteringResults {
      * @return
      */
     public SubMatrix P(final int t) {
-        if (m_P == null || t < m_start) {
+        if (t < m_start) {
             return null;
-        } else {
+        } else if (m_Pp != null) {
+            return m_Pp.matrix(t - m_start);
+        } else if (m_P != null) {
             return m_P.matrix(t - m_start);
+        } else {
+            return null;
         }
     }
 
+    /**
+     *
+     * @return
+     */
+    public boolean isPackedStorage() {
+        return m_packed;
+    }
+
+    /**
+     * Stores only the lower triangular part of P (symmetric) and of F
+     * (Cholesky factor). P(t) and F(t) then return new matrices
+     *
+     * @param value
+     */
+    public void setPackedStorage(final boolean value) {
+        m_packed = value;
+        clear();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isSinglePrecision() {
+        return m_single;
+    }
+
+    /**
+     * Stores P and F in single precision (packed storage only). Should only
+     * be used when the results are not re-used in further computations
+     *
+     * @param value
+     */
+    public void setSinglePrecision(final boolean value) {
+        m_single = value;
+        clear();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isMappedStorage() {
+        return m_mapped;
+    }
+
+    /**
+     * Stores P and F (packed, double precision) in a memory-mapped temporary
+     * file instead of the heap. The usual packed storage is used if the file
+     * can't be created
+     *
+     * @param value
+     */
+    public void setMappedStorage(final boolean value) {
+        m_mapped = value;
+        clear();
+    }
+
     /**
      *
      * @param ssf
@@ -190,15 +331,51 @@ public class VarianceMFilter implements IMFilteringResults {
         if (st < 0) {
             return;
         }
-        m_F.save(st, state.F);
+        if (m_Fp != null) {
+            m_Fp.save(st, state.F);
+        } else {
+            m_F.save(st, state.F);
+        }
         if (m_K != null) {
             m_K.save(st, state.K);
         }
-        if (m_P != null) {
+        if (m_Pp != null) {
+            m_Pp.save(st, state.P);
+        } else if (m_P != null) {
             m_P.save(st, state.P);
         }
     }
 
+    /**
+     * Saves the results of the square root filter (ArrayFilter). P is
+     * computed from its Cholesky factor
+     *
+     * @param t
+     * @param state
+     */
+    public void save(final int t, final ArrayState state) {
+        int st = t - m_start;
+        if (st < 0) {
+            return;
+        }
+        if (m_Fp != null) {
+            m_Fp.save(st, state.F);
+        } else {
+            m_F.save(st, state.F);
+        }
+        if (m_K != null) {
+            m_K.save(st, state.K);
+        }
+        if (m_Pp != null || m_P != null) {
+            Matrix P = SymmetricMatrix.XXt(state.Pl);
+            if (m_Pp != null) {
+                m_Pp.save(st, P);
+            } else {
+                m_P.save(st, P);
+            }
+        }
+    }
+
     /**
      *
      * @param value
@@ -214,7 +391,7 @@ public class VarianceMFilter implements IMFilteringResults {
      */
     public void setSavingP(final boolean value) {
         m_bP = value;
-        m_P = null;
+        releaseP();
     }
 
     /**
@@ -232,6 +409,7 @@ public class VarianceMFilter implements IMFilteringResults {
     public void setStartSaving(int p) {
         m_start = p;
         m_K = null;
-        m_P = null;
+        releaseP();
+        releaseF();
     }
 }
@@ -11,12 +11,16 @@ import ec.tstoolkit.data.DataBlock;
 import ec.tstoolkit.data.DescriptiveStatistics;
 import ec.tstoolkit.eco.Likelihood;
 import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.maths.matrices.SubMatrix;
+import ec.tstoolkit.maths.matrices.SymmetricMatrix;
+import ec.tstoolkit.mssf2.MSmoothingResults;
 import ec.tstoolkit.ssf2.ResidualsCumulator;
 import ec.tstoolkit.timeseries.simplets.TsData;
 import ec.tstoolkit.timeseries.simplets.TsFrequency;
 import ec.tstoolkit.timeseries.simplets.TsPeriod;
 import ec.tstoolkit.var.VarSpec;
 import org.junit.Test;
+import static org.junit.Assert.*;
 
 /**
  *
@@ -193,6 +197,145 @@ public class DfmEMTest {
  
    */  
    }
+
+    @Test
+    public void testAcceleratedEM() {
+        DynamicFactorModel m1 = dmodel.clone(), m2 = dmodel.clone();
+        m1.normalize();
+        m2.normalize();
+        DfmEM2 plain = new DfmEM2(null);
+        plain.setEpsilon(1e-4);
+        plain.setMaxIter(2000);
+        plain.initialize(m1, dfmdata);
+        DfmEM2 accelerated = new DfmEM2(null);
+        accelerated.setEpsilon(1e-4);
+        accelerated.setMaxIter(2000);
+        accelerated.setAccelerated(true);
+        accelerated.initialize(m2, dfmdata);
+        assertTrue(accelerated.getIterationsCount() < plain.getIterationsCount());
+        assertTrue(accelerated.getFinalLogLikelihood() >= plain.getFinalLogLikelihood() - 1e-1);
+    }
+
+    /**
+     * Starting model of the EM: variances rescaled and model normalized
+     */
+    private static DynamicFactorModel emStart() {
+        DynamicFactorModel start = dmodel.clone();
+        DfmEM2 em0 = new DfmEM2(null);
+        em0.setMaxIter(0);
+        em0.initialize(start, dfmdata);
+        return start;
+    }
+
+    /**
+     * M-step of the loadings computed from the stored smoothing results: the
+     * moments of the factors are computed period by period from the smoothed
+     * states and their variances
+     */
+    private static void referenceLoadings(DynamicFactorModel model) {
+        DfmProcessor processor = new DfmProcessor();
+        processor.setCalcVariance(true);
+        assertTrue(processor.process(model, dfmdata));
+        MSmoothingResults srslts = processor.getSmoothingResults();
+        Matrix m = dfmdata.generateMatrix(null);
+        int nf = model.getFactorsCount(), nb = model.getBlockLength();
+        int n = m.getRowsCount(), i = 0;
+        for (DynamicFactorModel.MeasurementDescriptor desc : model.getMeasurements()) {
+            DataBlock y = m.column(i++);
+            int len = desc.type.getLength();
+            DataBlock z = new DataBlock(len);
+            desc.type.fill(z);
+            int nu = desc.getUsedFactorsCount();
+            int[] used = new int[nu];
+            for (int j = 0, u = 0; j < nf; ++j) {
+                if (!Double.isNaN(desc.coeff[j])) {
+                    used[u++] = j;
+                }
+            }
+            double[] gy = new double[nu];
+            Matrix g2 = new Matrix(nu, nu);
+            double yy = 0;
+            int nobs = 0;
+            for (int t = 0; t < n; ++t) {
+                double yt = y.get(t);
+                if (Double.isNaN(yt)) {
+                    continue;
+                }
+                ++nobs;
+                yy += yt * yt;
+                DataBlock a = srslts.A(t);
+                SubMatrix p = srslts.P(t);
+                for (int u = 0; u < nu; ++u) {
+                    int j0 = used[u] * nb;
+                    gy[u] += yt * z.dot(a.range(j0, j0 + len));
+                    for (int v = 0; v < nu; ++v) {
+                        int l0 = used[v] * nb;
+                        double x = 0;
+                        for (int pr = 0; pr < len; ++pr) {
+                            for (int pc = 0; pc < len; ++pc) {
+                                x += z.get(pr) * z.get(pc)
+                                        * (p.get(j0 + pr, l0 + pc) + a.get(j0 + pr) * a.get(l0 + pc));
+                            }
+                        }
+                        g2.set(u, v, g2.get(u, v) + x);
+                    }
+                }
+            }
+            DataBlock c = new DataBlock(gy);
+            SymmetricMatrix.solve(g2, c, false);
+            for (int u = 0; u < nu; ++u) {
+                desc.coeff[used[u]] = c.get(u);
+            }
+            // sum(e(t)^2) = y'y - 2c'gy + c'G2c = y'y - c'gy
+            double ee = yy - c.dot(new DataBlock(gy));
+            desc.var = ee < 0 ? 1e-12 : ee / nobs;
+        }
+    }
+
+    private static void assertSameMeasurements(DynamicFactorModel m1, DynamicFactorModel m2, double eps) {
+        for (int i = 0; i < m1.getMeasurements().size(); ++i) {
+            DynamicFactorModel.MeasurementDescriptor d1 = m1.getMeasurements().get(i), d2 = m2.getMeasurements().get(i);
+            for (int j = 0; j < d1.coeff.length; ++j) {
+                if (Double.isNaN(d1.coeff[j])) {
+                    assertTrue(Double.isNaN(d2.coeff[j]));
+                } else {
+                    assertEquals(d1.coeff[j], d2.coeff[j], eps * Math.max(1, Math.abs(d1.coeff[j])));
+                }
+            }
+            assertEquals(d1.var, d2.var, eps * Math.max(1, d1.var));
+        }
+    }
+
+    @Test
+    public void testEMSufficientStatistics() {
+        DynamicFactorModel start = emStart();
+        // one M-step of the loadings, from the sufficient statistics
+        DynamicFactorModel m = start.clone();
+        DfmEM2 em = new DfmEM2(null);
+        em.setEstimateVar(false);
+        em.setMaxIter(1);
+        em.initialize(m, dfmdata);
+        // the same M-step, from the moments of each period
+        DynamicFactorModel ref = start.clone();
+        referenceLoadings(ref);
+        ref.normalize();
+        assertSameMeasurements(ref, m, 1e-6);
+    }
+
+    @Test
+    public void testParallelEM() {
+        DynamicFactorModel start = emStart();
+        DynamicFactorModel m1 = start.clone(), m4 = start.clone();
+        DfmEM2 em1 = new DfmEM2(null);
+        em1.setMaxIter(10);
+        em1.initialize(m1, dfmdata);
+        DfmEM2 em4 = new DfmEM2(null);
+        em4.setMaxIter(10);
+        em4.setParallelism(4);
+        em4.initialize(m4, dfmdata);
+        assertSameMeasurements(m1, m4, 0);
+        assertTrue(em1.getFinalLogLikelihood() == em4.getFinalLogLikelihood());
+    }
     
        
 
@@ -9,25 +9,45 @@ import ec.tstoolkit.timeseries.information.TsInformationSet;
 import ec.tstoolkit.timeseries.information.TsInformationUpdates;
 import data.Data;
 import ec.tstoolkit.data.DataBlock;
+import ec.tstoolkit.data.IReadDataBlock;
 import ec.tstoolkit.data.DescriptiveStatistics;
 import ec.tstoolkit.dfm.DynamicFactorModel.MeasurementDescriptor;
 import ec.tstoolkit.dfm.DynamicFactorModel.MeasurementStructure;
 import ec.tstoolkit.dfm.DynamicFactorModel.MeasurementType;
 import ec.tstoolkit.eco.Likelihood;
 import ec.tstoolkit.maths.matrices.Matrix;
+import ec.tstoolkit.maths.matrices.SymmetricMatrix;
+import ec.tstoolkit.maths.realfunctions.IFunctionDerivatives;
+import ec.tstoolkit.maths.realfunctions.IFunctionInstance;
+import ec.tstoolkit.maths.realfunctions.ISsqFunctionDerivatives;
+import ec.tstoolkit.maths.realfunctions.ISsqFunctionInstance;
+import ec.tstoolkit.maths.realfunctions.NumericalDerivatives;
+import ec.tstoolkit.maths.realfunctions.SsqNumericalDerivatives;
 import ec.tstoolkit.mssf2.ArrayFilter;
+import ec.tstoolkit.mssf2.CollapsedMSsf;
 import ec.tstoolkit.mssf2.DefaultTimeInvariantMultivariateSsf;
 import ec.tstoolkit.mssf2.FullM2UMap;
 import ec.tstoolkit.mssf2.FullMSsf;
 import ec.tstoolkit.mssf2.IArraySsf;
+import ec.tstoolkit.mssf2.IMSmoothingResults;
 import ec.tstoolkit.mssf2.IMSsf;
 import ec.tstoolkit.mssf2.M2UAdapter;
 import ec.tstoolkit.mssf2.M2UData;
 import ec.tstoolkit.mssf2.MFilter;
+import ec.tstoolkit.mssf2.MFilteringResults;
 import ec.tstoolkit.mssf2.MPredictionErrorDecomposition;
 import ec.tstoolkit.mssf2.MSmoother;
 import ec.tstoolkit.mssf2.MSmoothingResults;
+import ec.tstoolkit.mssf2.MSsfAlgorithm;
+import ec.tstoolkit.mssf2.MSsfAnalyticDerivatives;
+import ec.tstoolkit.mssf2.MSsfFunction;
+import ec.tstoolkit.mssf2.MSsfFunctionInstance;
+import ec.tstoolkit.mssf2.MWorkspace;
 import ec.tstoolkit.mssf2.MultivariateSsfData;
+import ec.tstoolkit.mssf2.PackedMatrixStorage;
+import ec.tstoolkit.mssf2.ParallelNumericalDerivatives;
+import ec.tstoolkit.mssf2.ParallelSsqNumericalDerivatives;
+import ec.tstoolkit.mssf2.UnivariateMFilter;
 import ec.tstoolkit.ssf2.DiffuseFilteringResults;
 import ec.tstoolkit.ssf2.Filter;
 import ec.tstoolkit.ssf2.PredictionErrorDecomposition;
@@ -38,8 +58,12 @@ import ec.tstoolkit.timeseries.simplets.TsData;
 import ec.tstoolkit.timeseries.simplets.TsFrequency;
 import ec.tstoolkit.timeseries.simplets.TsPeriod;
 import ec.tstoolkit.var.VarSpec;
+import java.io.File;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -227,6 +251,38 @@ public class DynamicFactorModelTest {
         }
     }
 
+    @Test
+    public void testTVT() {
+        IMSsf ssf = dmodel.ssfRepresentation();
+        DefaultTimeInvariantMultivariateSsf defssf = DefaultTimeInvariantMultivariateSsf.of(ssf);
+        Matrix x = new Matrix(ssf.getStateDim(), ssf.getStateDim());
+        x.randomize();
+        Matrix v = SymmetricMatrix.XXt(x);
+        Matrix w = v.clone();
+        ssf.TVT(0, v.subMatrix());
+        defssf.TVT(0, w.subMatrix());
+        ssf.TVT(0, v.subMatrix());
+        defssf.TVT(0, w.subMatrix());
+        assertTrue(v.minus(w).nrm2() < 1e-9 * (1 + w.nrm2()));
+
+        if (stressTest) {
+            long t0 = System.currentTimeMillis();
+            for (int i = 0; i < 10000; ++i) {
+                ssf.TVT(0, v.clone().subMatrix());
+            }
+            long t1 = System.currentTimeMillis();
+            long s0 = System.currentTimeMillis();
+            for (int i = 0; i < 10000; ++i) {
+                defssf.TVT(0, v.clone().subMatrix());
+            }
+            long s1 = System.currentTimeMillis();
+
+            System.out.println("TVT");
+            System.out.println(s1 - s0);
+            System.out.println(t1 - t0);
+        }
+    }
+
     @Test
     public void testXT() {
         IMSsf ssf = dmodel.ssfRepresentation();
@@ -325,6 +381,579 @@ public class DynamicFactorModelTest {
         System.out.println(q1 - q0);
     }
 
+    @Test
+    public void testUnivariateFilter() {
+        IMSsf ssf = dmodel.ssfRepresentation();
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        MFilter filter = new MFilter();
+        MPredictionErrorDecomposition results = new MPredictionErrorDecomposition(true);
+        filter.process(ssf, data, results);
+        UnivariateMFilter ufilter = new UnivariateMFilter();
+        MPredictionErrorDecomposition uresults = new MPredictionErrorDecomposition(true);
+        ufilter.process(ssf, data, uresults);
+        Likelihood ll = new Likelihood(), ull = new Likelihood();
+        evaluate(results, ll);
+        evaluate(uresults, ull);
+        assertEquals(ll.getLogLikelihood(), ull.getLogLikelihood(), 1e-6);
+    }
+
+    /**
+     * Same factors and loadings as the test model, but all the measurements
+     * are monthly: only the first lag of each factor is used in the
+     * measurement equation, so that there are much more variables than active
+     * states.
+     */
+    private static DynamicFactorModel monthlyModel() {
+        DynamicFactorModel model = new DynamicFactorModel(12, 3);
+        model.setTransition(dmodel.getTransition());
+        for (MeasurementDescriptor desc : dmodel.getMeasurements()) {
+            model.addMeasurement(new MeasurementDescriptor(
+                    DynamicFactorModel.measurement(MeasurementType.M), desc.coeff, desc.var));
+        }
+        model.setInitialization(VarSpec.Initialization.Unconditional);
+        return model;
+    }
+
+    @Test
+    public void testCollapsedFilter() {
+        IMSsf ssf = monthlyModel().ssfRepresentation();
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        CollapsedMSsf cssf = CollapsedMSsf.create(ssf, data);
+        assertTrue(cssf != null);
+        assertTrue(cssf.getVarsCount() < ssf.getVarsCount());
+        MFilter filter = new MFilter();
+        MPredictionErrorDecomposition results = new MPredictionErrorDecomposition(true);
+        filter.process(ssf, data, results);
+        MFilter cfilter = new MFilter();
+        MPredictionErrorDecomposition cresults = new MPredictionErrorDecomposition(true);
+        cfilter.process(cssf, cssf.getData(), cresults);
+        cssf.addResiduals(cresults);
+        assertEquals(results.getObsCount(), cresults.getObsCount());
+        Likelihood ll = new Likelihood(), cll = new Likelihood();
+        evaluate(results, ll);
+        evaluate(cresults, cll);
+        assertEquals(ll.getLogLikelihood(), cll.getLogLikelihood(), 1e-6);
+        // WW' = V
+        int n = ssf.getStateDim();
+        Matrix w = new Matrix(n, ssf.getTransitionResDim());
+        cssf.W(0, w.subMatrix());
+        Matrix v = new Matrix(n, n);
+        ssf.V(0, v.subMatrix());
+        assertTrue(SymmetricMatrix.XXt(w).minus(v).nrm2() < 1e-9);
+    }
+
+    @Test
+    public void testWorkspace() {
+        IMSsf ssf = dmodel.ssfRepresentation();
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        MSmoother smoother = new MSmoother();
+        MSmoothingResults sresults = new MSmoothingResults();
+        smoother.process(ssf, data, sresults);
+        MWorkspace ws = MWorkspace.create(ssf, data);
+        MSmoother wsmoother = new MSmoother();
+        wsmoother.setWorkspace(ws);
+        for (int i = 0; i < 2; ++i) {
+            wsmoother.process(ssf, data, ws.getSmoothingResults());
+        }
+        MSmoothingResults wresults = ws.getSmoothingResults();
+        assertTrue(new DataBlock(sresults.component(0)).distance(new DataBlock(wresults.component(0))) < 1e-9);
+        assertTrue(sresults.componentVar(0).distance(wresults.componentVar(0)) < 1e-9);
+    }
+
+    @Test
+    public void testPackedStorage() {
+        IMSsf ssf = dmodel.ssfRepresentation();
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        MSmoothingResults sresults = new MSmoothingResults();
+        new MSmoother().process(ssf, data, sresults);
+        MSmoothingResults presults = new MSmoothingResults();
+        presults.setPackedStorage(true);
+        new MSmoother().process(ssf, data, presults);
+        assertTrue(sresults.componentCovar(0, 1).distance(presults.componentCovar(1, 0)) < 1e-9);
+        assertTrue(new Matrix(sresults.P(10)).minus(new Matrix(presults.P(10))).nrm2() < 1e-9);
+    }
+
+    @Test
+    public void testMappedStorage() {
+        IMSsf ssf = dmodel.ssfRepresentation();
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        MSmoothingResults sresults = new MSmoothingResults();
+        new MSmoother().process(ssf, data, sresults);
+        MSmoothingResults mresults = new MSmoothingResults();
+        mresults.setMappedStorage(true);
+        new MSmoother().process(ssf, data, mresults);
+        assertTrue(sresults.componentCovar(0, 1).distance(mresults.componentCovar(1, 0)) < 1e-9);
+        assertTrue(new Matrix(sresults.P(10)).minus(new Matrix(mresults.P(10))).nrm2() < 1e-9);
+    }
+
+    @Test
+    public void testMappedStorageRelease() {
+        PackedMatrixStorage storage = PackedMatrixStorage.createMapped(3, 5, true);
+        assertTrue(storage != null && storage.isMapped());
+        File file = storage.getFile();
+        assertTrue(file.exists());
+        Matrix m = new Matrix(3, 3);
+        m.randomize();
+        SymmetricMatrix.fromLower(m);
+        storage.save(4, m);
+        storage.release();
+        // the file can't be deleted on some systems while it is mapped
+        if (!System.getProperty("os.name").startsWith("Windows")) {
+            assertFalse(file.exists());
+        }
+        // the storage remains readable by its holders
+        for (int i = 0; i < 3; ++i) {
+            for (int j = 0; j < 3; ++j) {
+                assertEquals(m.get(i, j), storage.get(4, i, j), 0);
+            }
+        }
+        storage.release();
+    }
+
+    @Test
+    public void testWindowedSmoothing() {
+        IMSsf ssf = dmodel.ssfRepresentation();
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        MSmoothingResults sresults = new MSmoothingResults();
+        new MSmoother().process(ssf, data, sresults);
+        int start = data.getCount() - 24;
+        MSmoother smoother = new MSmoother();
+        smoother.setStopPosition(start);
+        MSmoothingResults wresults = new MSmoothingResults();
+        smoother.process(ssf, data, wresults);
+        assertTrue(wresults.A(start - 1) == null);
+        assertTrue(smoother.getFilteringResults().getFilteredData().A(start - 1) == null);
+        assertTrue(sresults.A(start).distance(wresults.A(start)) < 1e-9);
+        assertTrue(new Matrix(sresults.P(start)).minus(new Matrix(wresults.P(start))).nrm2() < 1e-9);
+    }
+
+    @Test
+    public void testSmoothingWithoutStorage() {
+        IMSsf ssf = dmodel.ssfRepresentation();
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        MSmoothingResults sresults = new MSmoothingResults();
+        new MSmoother().process(ssf, data, sresults);
+        final Matrix p10 = new Matrix(ssf.getStateDim(), ssf.getStateDim());
+        final DataBlock a10 = new DataBlock(ssf.getStateDim());
+        new MSmoother().process(ssf, data, new IMSmoothingResults() {
+            @Override
+            public void prepare(int n, int d, int v) {
+            }
+
+            @Override
+            public void save(int pos, DataBlock a, Matrix p) {
+                if (pos == 10) {
+                    a10.copy(a);
+                    p10.copy(p);
+                }
+            }
+        });
+        assertTrue(sresults.A(10).distance(a10) < 1e-9);
+        assertTrue(new Matrix(sresults.P(10)).minus(p10).nrm2() < 1e-9);
+    }
+
+    @Test
+    public void testSquareRootFilter() {
+        IArraySsf ssf = dmodel.arraySsfRepresentation();
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        MFilter filter = new MFilter();
+        MPredictionErrorDecomposition results = new MPredictionErrorDecomposition(true);
+        filter.process(ssf, data, results);
+        ArrayFilter afilter = new ArrayFilter();
+        MPredictionErrorDecomposition aresults = new MPredictionErrorDecomposition(true);
+        afilter.process(ssf, data, aresults);
+        Likelihood ll = new Likelihood(), all = new Likelihood();
+        evaluate(results, ll);
+        evaluate(aresults, all);
+        assertEquals(ll.getLogLikelihood(), all.getLogLikelihood(), 1e-6);
+        MSmoothingResults sresults = new MSmoothingResults();
+        new MSmoother().process(ssf, data, sresults);
+        MSmoother asmoother = new MSmoother();
+        asmoother.setSquareRoot(true);
+        MSmoothingResults asresults = new MSmoothingResults();
+        asmoother.process(ssf, data, asresults);
+        assertTrue(sresults.A(10).distance(asresults.A(10)) < 1e-6);
+    }
+
+    @Test
+    public void testParallelDerivatives() {
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        DfmMapping mapping = new DfmMapping(dmodel.clone(), true, false);
+        MSsfFunction fn = new MSsfFunction(data, mapping, new MSsfAlgorithm());
+        MSsfFunctionInstance pt = fn.ssqEvaluate(mapping.parameters());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            IReadDataBlock g = new ParallelSsqNumericalDerivatives(fn, pt, true, null).getGradient();
+            IReadDataBlock pg = new ParallelSsqNumericalDerivatives(fn, pt, true, pool).getGradient();
+            assertTrue(new DataBlock(g).distance(new DataBlock(pg)) == 0);
+            // same derivatives as the library
+            IReadDataBlock lg = new SsqNumericalDerivatives(fn, pt, false, true).getGradient();
+            for (int i = 0; i < lg.getLength(); ++i) {
+                assertEquals(lg.get(i), pg.get(i), 1e-2 * Math.max(1, Math.abs(lg.get(i))));
+            }
+            // the derivatives of the function don't depend on the pool
+            ISsqFunctionDerivatives d0 = fn.getDerivatives((ISsqFunctionInstance) pt);
+            assertTrue(d0 instanceof ParallelSsqNumericalDerivatives);
+            assertTrue(new DataBlock(d0.getGradient()).distance(new DataBlock(g)) == 0);
+            fn.setDerivativesPool(pool);
+            ISsqFunctionDerivatives d = fn.getDerivatives((ISsqFunctionInstance) pt);
+            assertTrue(d instanceof ParallelSsqNumericalDerivatives);
+            assertTrue(new DataBlock(d.getGradient()).distance(new DataBlock(pg)) == 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static DynamicFactorModel smallModel() {
+        DynamicFactorModel model = new DynamicFactorModel(2, 1);
+        DynamicFactorModel.TransitionDescriptor tdesc = new DynamicFactorModel.TransitionDescriptor(1, 1);
+        model.setTransition(tdesc);
+        for (int i = 0; i < 4; ++i) {
+            model.addMeasurement(new MeasurementDescriptor(
+                    DynamicFactorModel.measurement(MeasurementType.M), new double[]{1}, 1));
+        }
+        model.setInitialization(VarSpec.Initialization.Unconditional);
+        return model;
+    }
+
+    private static TsInformationSet smallData() {
+        TsData[] input = new TsData[4];
+        TsPeriod start = new TsPeriod(TsFrequency.Monthly, 1980, 0);
+        for (int i = 0; i < input.length; ++i) {
+            input[i] = new TsData(start, dd.row(i));
+        }
+        return new TsInformationSet(input);
+    }
+
+    private static DfmEstimator smallEstimator() {
+        DfmEstimator estimator = new DfmEstimator();
+        estimator.setMaxIter(100);
+        estimator.setMaxInitialIter(5);
+        estimator.setMaxIntermediateIter(10);
+        return estimator;
+    }
+
+    @Test
+    public void testMultiStart() {
+        TsInformationSet input = smallData();
+        DfmEstimator single = smallEstimator();
+        assertTrue(single.estimate(smallModel(), input));
+        DfmMultiStartEstimator mestimator = new DfmMultiStartEstimator(smallEstimator());
+        mestimator.setStartsCount(2);
+        mestimator.setSeed(1);
+        mestimator.setAbandonMargin(-1);
+        assertTrue(mestimator.estimate(smallModel(), input));
+        assertTrue(mestimator.getLikelihoods()[0] != null);
+        assertEquals(single.geLikelihood().getLogLikelihood(), mestimator.getLikelihoods()[0].getLogLikelihood(), 1e-9);
+        assertTrue(mestimator.geLikelihood().getLogLikelihood() >= single.geLikelihood().getLogLikelihood() - 1e-9);
+        // cancellation
+        DfmMultiStartEstimator cestimator = new DfmMultiStartEstimator(smallEstimator());
+        cestimator.setStartsCount(2);
+        cestimator.setSeed(1);
+        cestimator.setCancelCriterion(new DfmEstimator.IAbandonCriterion() {
+            @Override
+            public boolean abandon(double ll) {
+                return true;
+            }
+        });
+        assertFalse(cestimator.estimate(smallModel(), input));
+        assertTrue(cestimator.getBestEstimator() == null);
+    }
+
+    @Test
+    public void testMultiStartAbandons() {
+        TsInformationSet input = smallData();
+        Likelihood[] lls = null;
+        int best = -1;
+        // the abandons don't depend on the timing of the estimations
+        for (int k = 0; k < 2; ++k) {
+            DfmMultiStartEstimator mestimator = new DfmMultiStartEstimator(smallEstimator());
+            mestimator.setStartsCount(3);
+            mestimator.setSeed(1);
+            mestimator.setAbandonMargin(.5);
+            assertTrue(mestimator.estimate(smallModel(), input));
+            if (lls == null) {
+                lls = mestimator.getLikelihoods();
+                best = mestimator.getBestStart();
+            } else {
+                assertEquals(best, mestimator.getBestStart());
+                for (int i = 0; i < lls.length; ++i) {
+                    Likelihood ll = mestimator.getLikelihoods()[i];
+                    assertEquals(lls[i] == null, ll == null);
+                    if (ll != null) {
+                        assertEquals(lls[i].getLogLikelihood(), ll.getLogLikelihood(), 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAbandonWithoutBlockIterations() {
+        DfmEstimator estimator = smallEstimator();
+        estimator.setUsingBlockIterations(false);
+        estimator.setMaxIntermediateIter(1);
+        final int[] ncalls = new int[1];
+        estimator.setAbandonCriterion(new DfmEstimator.IAbandonCriterion() {
+            @Override
+            public boolean abandon(double ll) {
+                ++ncalls[0];
+                return true;
+            }
+        });
+        assertTrue(estimator.estimate(smallModel(), smallData()));
+        assertEquals(1, ncalls[0]);
+        assertTrue(estimator.isAbandoned());
+    }
+
+    @Test
+    public void testParallelNumericalDerivatives() {
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(0, 4, 0, dd.getColumnsCount()), null);
+        DfmMapping mapping = new DfmMapping(smallModel());
+        MSsfFunction fn = new MSsfFunction(data, mapping, new MSsfAlgorithm());
+        IFunctionInstance pt = fn.evaluate(mapping.parameters());
+        int n = pt.getParameters().getLength();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelNumericalDerivatives sd = new ParallelNumericalDerivatives(fn, pt, true, null);
+            ParallelNumericalDerivatives pd = new ParallelNumericalDerivatives(fn, pt, true, pool);
+            NumericalDerivatives ld = new NumericalDerivatives(fn, pt, false, true);
+            IReadDataBlock g = sd.getGradient(), pg = pd.getGradient(), lg = ld.getGradient();
+            assertTrue(new DataBlock(g).distance(new DataBlock(pg)) == 0);
+            for (int i = 0; i < n; ++i) {
+                assertEquals(lg.get(i), pg.get(i), 1e-2 * Math.max(1, Math.abs(lg.get(i))));
+            }
+            Matrix h = new Matrix(n, n), ph = new Matrix(n, n), lh = new Matrix(n, n);
+            sd.getHessian(h.subMatrix());
+            pd.getHessian(ph.subMatrix());
+            ld.getHessian(lh.subMatrix());
+            assertTrue(h.minus(ph).nrm2() == 0);
+            for (int i = 0; i < n; ++i) {
+                for (int j = 0; j < i; ++j) {
+                    assertTrue(ph.get(i, j) == ph.get(j, i));
+                }
+            }
+            assertTrue(ph.minus(lh).nrm2() <= 5e-2 * Math.max(1, lh.nrm2()));
+            // the derivatives of the function don't depend on the pool
+            IFunctionDerivatives d0 = fn.getDerivatives(pt);
+            assertTrue(d0 instanceof ParallelNumericalDerivatives);
+            assertTrue(new DataBlock(d0.getGradient()).distance(new DataBlock(g)) == 0);
+            fn.setDerivativesPool(pool);
+            IFunctionDerivatives d = fn.getDerivatives(pt);
+            assertTrue(d instanceof ParallelNumericalDerivatives);
+            assertTrue(new DataBlock(d.getGradient()).distance(new DataBlock(pg)) == 0);
+            Matrix dh = new Matrix(n, n);
+            d.getHessian(dh.subMatrix());
+            assertTrue(dh.minus(h).nrm2() == 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelEstimation() {
+        TsInformationSet input = smallData();
+        DfmEstimator sestimator = smallEstimator();
+        sestimator.setParallelism(1);
+        assertTrue(sestimator.estimate(smallModel(), input));
+        DfmEstimator pestimator = smallEstimator();
+        pestimator.setParallelism(2);
+        assertTrue(pestimator.estimate(smallModel(), input));
+        // same estimates, whatever the number of threads
+        assertEquals(sestimator.geLikelihood().getLogLikelihood(), pestimator.geLikelihood().getLogLikelihood(), 0);
+        assertTrue(sestimator.getGradient().distance(pestimator.getGradient()) == 0);
+    }
+
+    @Test
+    public void testOuterProductInformation() {
+        // simulation of the small one-factor model
+        DynamicFactorModel model = smallModel();
+        model.getTransition().varParams.set(0, 0, .6);
+        model.getTransition().covar.set(0, 0, 1);
+        double[] c = new double[]{1, .8, -.5, 1.2}, v = new double[]{1, .5, .8, 1.5};
+        for (int i = 0; i < c.length; ++i) {
+            MeasurementDescriptor desc = model.getMeasurements().get(i);
+            desc.coeff[0] = c[i];
+            desc.var = v[i];
+        }
+        int n = 2000;
+        Random rnd = new Random(0);
+        Matrix y = new Matrix(c.length, n);
+        double f = rnd.nextGaussian() / Math.sqrt(1 - .36);
+        for (int t = 0; t < n; ++t) {
+            f = .6 * f + rnd.nextGaussian();
+            for (int i = 0; i < c.length; ++i) {
+                y.set(i, t, c[i] * f + Math.sqrt(v[i]) * rnd.nextGaussian());
+            }
+        }
+        model.normalize();
+        MultivariateSsfData data = new MultivariateSsfData(y.subMatrix(), null);
+        DfmMapping mapping = new DfmMapping(model, false, false);
+        DataBlock p = new DataBlock(mapping.parameters());
+        Matrix opg = new DfmInformation(mapping).compute(data);
+        int np = p.getLength();
+        assertEquals(np, opg.getRowsCount());
+        // numerical Hessian of minus the concentrated log-likelihood
+        MSsfFunction fn = new MSsfFunction(data, mapping, new MSsfAlgorithm());
+        fn.setCacheSize(0);
+        Matrix h = new Matrix(np, np);
+        for (int i = 0; i < np; ++i) {
+            double hi = 1e-4 * Math.max(1, Math.abs(p.get(i)));
+            for (int j = 0; j <= i; ++j) {
+                double hj = 1e-4 * Math.max(1, Math.abs(p.get(j)));
+                double d = 0;
+                for (int k = 0; k < 4; ++k) {
+                    DataBlock q = p.deepClone();
+                    q.add(i, k < 2 ? hi : -hi);
+                    q.add(j, k % 2 == 0 ? hj : -hj);
+                    double ll = fn.evaluate(q).getLikelihood().getLogLikelihood();
+                    d += (k == 0 || k == 3) ? -ll : ll;
+                }
+                h.set(i, j, d / (4 * hi * hj));
+                h.set(j, i, h.get(i, j));
+            }
+        }
+        for (int i = 0; i < np; ++i) {
+            assertTrue(opg.get(i, i) > 0);
+            for (int j = 0; j < i; ++j) {
+                assertEquals(opg.get(i, j), opg.get(j, i), 1e-9 * Math.max(1, Math.abs(opg.get(i, j))));
+            }
+        }
+        // information matrix equality, up to the sampling error
+        assertTrue(opg.minus(h).nrm2() <= .25 * h.nrm2());
+        // the estimator uses the outer product when it is requested
+        DfmEstimator estimator = smallEstimator();
+        estimator.setInformation(NumericalProcessingSpec.Information.OuterProduct);
+        assertTrue(estimator.estimate(smallModel(), smallData()));
+        Matrix eh = estimator.getHessian();
+        assertTrue(eh != null && eh.getRowsCount() == eh.getColumnsCount());
+    }
+
+    @Test
+    public void testAnalyticScore() {
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        DfmMapping mapping = new DfmMapping(dmodel.clone());
+        MSsfFunction fn = new MSsfFunction(data, mapping, new MSsfAlgorithm());
+        MSsfFunctionInstance pt = fn.evaluate(mapping.parameters());
+        IReadDataBlock ng = fn.getDerivatives((IFunctionInstance) pt).getGradient();
+        fn.setScore(mapping);
+        IReadDataBlock ag = fn.getDerivatives((IFunctionInstance) pt).getGradient();
+        for (int i = 0; i < ng.getLength(); ++i) {
+            assertEquals(ng.get(i), ag.get(i), 1e-2 * Math.max(1, Math.abs(ng.get(i))));
+        }
+    }
+
+    @Test
+    public void testInitialVariance() {
+        DynamicFactorModel model = dmodel.clone();
+        model.setInitialization(VarSpec.Initialization.Unconditional);
+        IMSsf ssf = model.ssfRepresentation();
+        int n = ssf.getStateDim();
+        Matrix P0 = new Matrix(n, n);
+        ssf.Pf0(P0.subMatrix());
+        Matrix P1 = P0.clone();
+        ssf.TVT(0, P1.subMatrix());
+        ssf.addV(0, P1.subMatrix());
+        assertTrue(new DataBlock(P0.internalStorage()).distance(new DataBlock(P1.internalStorage())) < 1e-6);
+    }
+
+    @Test
+    public void testTransitionCache() {
+        DynamicFactorModel model = dmodel.clone();
+        model.setInitialization(VarSpec.Initialization.Unconditional);
+        int n = model.getBlockLength() * model.getFactorsCount();
+        Matrix P0 = new Matrix(n, n), P1 = new Matrix(n, n), P2 = new Matrix(n, n);
+        model.ssfRepresentation().Pf0(P0.subMatrix());
+        // measurement-only change: same transition block
+        DynamicFactorModel m1 = model.clone();
+        m1.getMeasurements().get(0).coeff[0] *= 2;
+        m1.ssfRepresentation().Pf0(P1.subMatrix());
+        assertTrue(Arrays.equals(P0.internalStorage(), P1.internalStorage()));
+        // VAR change: the cached block can't be used
+        DynamicFactorModel m2 = model.clone();
+        m2.getTransition().varParams.mul(.5);
+        m2.ssfRepresentation().Pf0(P2.subMatrix());
+        assertFalse(Arrays.equals(P0.internalStorage(), P2.internalStorage()));
+    }
+
+    @Test
+    public void testFunctionCache() {
+        MultivariateSsfData data = new MultivariateSsfData(dd.subMatrix(), null);
+        DfmMapping mapping = new DfmMapping(dmodel.clone());
+        MSsfFunction fn = new MSsfFunction(data, mapping, new MSsfAlgorithm());
+        fn.setCacheSize(2);
+        DataBlock p = new DataBlock(mapping.parameters());
+        MSsfFunctionInstance pt = fn.evaluate(p);
+        assertTrue(pt == fn.evaluate(p.deepClone()));
+        assertEquals(1, fn.getCacheHits());
+        assertEquals(1, fn.getCacheMisses());
+        DataBlock q = p.deepClone();
+        q.add(0, 1e-3);
+        assertTrue(pt != fn.evaluate(q));
+        assertEquals(pt.getValue(), fn.evaluate(p).getValue(), 0);
+        assertEquals(2, fn.getCacheHits());
+        // the perturbed points of the derivatives don't go through the cache
+        fn.getDerivatives((ISsqFunctionInstance) pt).getGradient();
+        assertEquals(2, fn.getCacheMisses());
+        assertTrue(pt == fn.evaluate(p));
+        assertTrue(fn.evaluate(q) != null);
+        assertEquals(4, fn.getCacheHits());
+        // nor those of the Hessian of the analytic derivatives
+        MultivariateSsfData sdata = new MultivariateSsfData(dd.subMatrix(0, 4, 0, dd.getColumnsCount()), null);
+        DfmMapping smapping = new DfmMapping(smallModel());
+        MSsfFunction sfn = new MSsfFunction(sdata, smapping, new MSsfAlgorithm());
+        sfn.setScore(smapping);
+        MSsfFunctionInstance spt = sfn.evaluate(smapping.parameters());
+        IFunctionDerivatives sd = sfn.getDerivatives((IFunctionInstance) spt);
+        assertTrue(sd instanceof MSsfAnalyticDerivatives);
+        int n = spt.getParameters().getLength();
+        sd.getHessian(new Matrix(n, n).subMatrix());
+        assertEquals(1, sfn.getCacheMisses());
+        assertTrue(spt == sfn.evaluate(smapping.parameters()));
+    }
+
+    /**
+     * Random data without missing values, except a ragged edge at the end of
+     * the sample (the last i % 6 periods of the i-th series are missing)
+     */
+    private static Matrix raggedData() {
+        Matrix m = ddrnd.clone();
+        int n = m.getColumnsCount();
+        for (int i = 0; i < m.getRowsCount(); ++i) {
+            m.row(i).range(n - i % 6, n).set(Double.NaN);
+        }
+        return m;
+    }
+
+    @Test
+    public void testSteadyState() {
+        IMSsf ssf = dmodel.ssfRepresentation();
+        Matrix m = raggedData();
+        MultivariateSsfData data = new MultivariateSsfData(m.subMatrix(), null);
+        MFilter filter = new MFilter();
+        MFilteringResults results = new MFilteringResults();
+        results.saveAll(0);
+        filter.process(ssf, data, results);
+        // the steady state is reached before the ragged edge
+        assertTrue(filter.getSteadyStatePosition() >= 0);
+        assertTrue(filter.getSteadyStatePosition() < m.getColumnsCount() - 5);
+        MFilter sfilter = new MFilter();
+        sfilter.setSteadyStateTolerance(0);
+        MFilteringResults sresults = new MFilteringResults();
+        sresults.saveAll(0);
+        sfilter.process(ssf, data, sresults);
+        assertTrue(sfilter.getSteadyStatePosition() < 0);
+        Likelihood ll = new Likelihood(), sll = new Likelihood();
+        evaluate(results, ll);
+        evaluate(sresults, sll);
+        assertEquals(sll.getLogLikelihood(), ll.getLogLikelihood(), 1e-6);
+        for (int t = filter.getSteadyStatePosition(); t < m.getColumnsCount(); ++t) {
+            assertTrue(results.getFilteredData().A(t).distance(sresults.getFilteredData().A(t)) < 1e-6);
+            assertTrue(results.getFilteredData().E(t).distance(sresults.getFilteredData().E(t)) < 1e-6);
+            assertTrue(new Matrix(results.getVarianceFilter().P(t)).minus(new Matrix(sresults.getVarianceFilter().P(t))).nrm2() < 1e-6);
+        }
+    }
+
     //@Test
     public void testVar3() {
         long q0 = System.currentTimeMillis();
@@ -514,6 +1143,135 @@ public class DynamicFactorModelTest {
         System.out.println(q1 - q0);
     }
 
+    /**
+     * Old and new information sets of testNews
+     */
+    private static TsInformationSet[] newsData() {
+        TsData[] s = new TsData[dd.getRowsCount()];
+        TsData[] os = new TsData[dd.getRowsCount()];
+        Random rnd = new Random(0);
+        TsPeriod start = new TsPeriod(TsFrequency.Monthly, 1980, 0);
+        for (int i = 0; i < s.length; ++i) {
+            s[i] = new TsData(start, dd.row(i));
+            os[i] = s[i].cleanExtremities();
+            if (os[i].getEnd().minus(start) > dd.getColumnsCount() - 24) {
+                os[i] = os[i].drop(0, rnd.nextInt(12));
+            }
+        }
+        return new TsInformationSet[]{new TsInformationSet(os), new TsInformationSet(s)};
+    }
+
+    @Test
+    public void testNewsWeights() {
+        TsInformationSet[] sets = newsData();
+        DfmNews news = new DfmNews(dmodel);
+        assertTrue(news.process(sets[0], sets[1]));
+        int[] series = new int[]{23, 0, 5, 23};
+        TsPeriod[] periods = new TsPeriod[series.length];
+        for (int i = 0; i < series.length; ++i) {
+            periods[i] = sets[1].series(series[i]).getLastPeriod().plus(-i);
+        }
+        Matrix w = news.weights(series, periods);
+        assertEquals(series.length, w.getRowsCount());
+        for (int i = 0; i < series.length; ++i) {
+            DataBlock wi = news.weights(series[i], periods[i]);
+            assertEquals(wi.getLength(), w.getColumnsCount());
+            assertTrue(w.row(i).distance(wi) <= 1e-9 * Math.max(1, wi.nrm2()));
+        }
+    }
+
+    @Test
+    public void testNewsCovariance() {
+        TsInformationSet[] sets = newsData();
+        DfmNews news = new DfmNews(dmodel);
+        assertTrue(news.process(sets[0], sets[1]));
+        // pairwise computation of the covariance of the news
+        List<TsInformationUpdates.Update> updates = news.newsDetails().news();
+        Matrix mcov = news.getStateCovariance();
+        IMSsf ssf = news.getSsf();
+        DynamicFactorModel model = news.getModel();
+        int n = updates.size(), c = model.getBlockLength(), nb = model.getFactorsCount();
+        int xc = mcov.getRowsCount() / nb;
+        TsPeriod last = sets[0].revisedData(sets[1]).getCurrentDomain()
+                .union(sets[1].getCurrentDomain()).getLast();
+        TsFrequency freq = last.getFrequency();
+        Matrix cov = new Matrix(n, n);
+        int d = ssf.getStateDim();
+        Matrix V = new Matrix(d, d);
+        DataBlock tmp = new DataBlock(d);
+        for (int i = 0; i < n; ++i) {
+            TsInformationUpdates.Update iupdate = updates.get(i);
+            int istart = last.minus(iupdate.period.lastPeriod(freq));
+            for (int j = 0; j <= i; ++j) {
+                TsInformationUpdates.Update jupdate = updates.get(j);
+                int jstart = last.minus(jupdate.period.lastPeriod(freq));
+                V.set(0);
+                for (int r = 0; r < nb; ++r) {
+                    for (int s = 0; s < nb; ++s) {
+                        V.subMatrix(r * c, r * c + c, s * c, s * c + c).copy(
+                                mcov.subMatrix(r * xc + istart, r * xc + istart + c,
+                                        s * xc + jstart, s * xc + jstart + c));
+                    }
+                }
+                for (int k = 0; k < d; ++k) {
+                    tmp.set(k, ssf.ZX(0, iupdate.series, V.column(k)));
+                }
+                double q = ssf.ZX(0, jupdate.series, tmp);
+                if (i == j) {
+                    q += model.getMeasurements().get(iupdate.series).var;
+                }
+                cov.set(i, j, q);
+            }
+        }
+        SymmetricMatrix.fromLower(cov);
+        SymmetricMatrix.lcholesky(cov, MFilter.Zero);
+        Matrix L = news.getNewsCovariance();
+        assertEquals(n, L.getRowsCount());
+        assertTrue(L.minus(cov).nrm2() <= 1e-9 * Math.max(1, cov.nrm2()));
+    }
+
+    @Test
+    public void testNewsCheckpoint() {
+        TsInformationSet[] sets = newsData();
+        // the same news, with a revision in the new data
+        TsData[] rs = sets[1].toArray();
+        DataBlock r = dd.row(5).deepClone();
+        int k = dd.getColumnsCount() - 60;
+        while (Double.isNaN(r.get(k))) {
+            ++k;
+        }
+        r.set(k, r.get(k) + 1);
+        rs[5] = new TsData(new TsPeriod(TsFrequency.Monthly, 1980, 0), r);
+        compareNews(sets[0], sets[1]);
+        compareNews(sets[0], new TsInformationSet(rs));
+    }
+
+    /**
+     * The news computed with and without the checkpoint of the filter must be
+     * the same
+     */
+    private static void compareNews(TsInformationSet oldSet, TsInformationSet newSet) {
+        DfmNews news = new DfmNews(dmodel);
+        assertTrue(news.isUsingCheckpoint());
+        assertTrue(news.process(oldSet, newSet));
+        DfmNews fnews = new DfmNews(dmodel);
+        fnews.setUsingCheckpoint(false);
+        assertTrue(fnews.process(oldSet, newSet));
+        assertTrue(news.news().distance(fnews.news()) <= 1e-9 * Math.max(1, fnews.news().nrm2()));
+        Matrix L = news.getNewsCovariance(), fL = fnews.getNewsCovariance();
+        assertTrue(L.minus(fL).nrm2() <= 1e-9 * Math.max(1, fL.nrm2()));
+        for (int s : new int[]{0, 5, 23}) {
+            TsPeriod last = newSet.series(s).getLastPeriod();
+            for (int i = 0; i < 3; ++i) {
+                TsPeriod p = last.plus(-i);
+                assertEquals(fnews.getOldForecast(s, p), news.getOldForecast(s, p), 1e-9);
+                assertEquals(fnews.getNewForecast(s, p), news.getNewForecast(s, p), 1e-9);
+                DataBlock w = news.weights(s, p), fw = fnews.weights(s, p);
+                assertTrue(w.distance(fw) <= 1e-9 * Math.max(1, fw.nrm2()));
+            }
+        }
+    }
+
     //@Test
     public void testMapping() {
         DfmMapping mapping = new DfmMapping(dmodel);
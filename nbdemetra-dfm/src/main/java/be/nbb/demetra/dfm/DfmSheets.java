@@ -71,7 +71,9 @@ final class DfmSheets {
         "emSpec.version.display=Version",
         "emSpec.maxIter.display=Max iterations",
         "emSpec.maxNumIter.display=Max numerical iterations",
-        "emSpec.precision.display=Precision"
+        "emSpec.precision.display=Precision",
+        "emSpec.accelerated.display=Accelerated (SQUAREM)",
+        "emSpec.parallelism.display=Parallelism"
     })
     private static void withEmSpec(EmSpec bean) {
         B.withBoolean()
@@ -98,6 +100,15 @@ final class DfmSheets {
                 .display(Bundle.emSpec_precision_display())
                 .min(0)
                 .add();
+        B.withBoolean()
+                .select(bean, "accelerated")
+                .display(Bundle.emSpec_accelerated_display())
+                .add();
+        B.withInt()
+                .select(bean, "parallelism")
+                .display(Bundle.emSpec_parallelism_display())
+                .min(1)
+                .add();
     }
 
     @NbBundle.Messages({
@@ -109,6 +120,10 @@ final class DfmSheets {
         "numericalProcessingSpec.blockIterations.display=Iterations by blocks",
         "numericalProcessingSpec.mixedEstimation.display=Mixed estimation",
         "numericalProcessingSpec.method.display=Optimization method",
+        "numericalProcessingSpec.filterEngine.display=Filter",
+        "numericalProcessingSpec.parallelism.display=Threads (derivatives)",
+        "numericalProcessingSpec.starts.display=Starts (multi-start estimation)",
+        "numericalProcessingSpec.information.display=Information matrix",
         "numericalProcessingSpec.precision.display=Precision"
     })
     private static void withNumericalProcessingSpec(NumericalProcessingSpec bean) {
@@ -147,6 +162,24 @@ final class DfmSheets {
                 .select(bean, "method")
                 .display(Bundle.numericalProcessingSpec_method_display())
                 .add();
+        B.withEnum(NumericalProcessingSpec.FilterEngine.class)
+                .select(bean, "filterEngine")
+                .display(Bundle.numericalProcessingSpec_filterEngine_display())
+                .add();
+        B.withInt()
+                .select(bean, "parallelism")
+                .display(Bundle.numericalProcessingSpec_parallelism_display())
+                .min(1)
+                .add();
+        B.withInt()
+                .select(bean, "starts")
+                .display(Bundle.numericalProcessingSpec_starts_display())
+                .min(1)
+                .add();
+        B.withEnum(NumericalProcessingSpec.Information.class)
+                .select(bean, "information")
+                .display(Bundle.numericalProcessingSpec_information_display())
+                .add();
         B.withDouble()
                 .select(bean, "precision")
                 .display(Bundle.numericalProcessingSpec_precision_display())
@@ -189,6 +222,7 @@ final class DfmSheets {
         "varSpec.initialization.display=Initialization",
         "modelSpec.display=Dfm model",
         "modelSpec.forecastHorizon.display=Forecast horizon",
+        "modelSpec.mappedStorage.display=Variances in temporary files",
         "simulationSpec.display=Simulation spec"
     })
 
@@ -273,5 +307,9 @@ final class DfmSheets {
                 })
                 .min(1)
                 .add();
+        B.withBoolean()
+                .select(spec, "mappedStorage")
+                .display(Bundle.modelSpec_mappedStorage_display())
+                .add();
     }
 }
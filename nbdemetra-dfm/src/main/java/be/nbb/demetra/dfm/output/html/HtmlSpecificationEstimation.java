@@ -156,6 +156,11 @@ public class HtmlSpecificationEstimation extends AbstractHtmlElement implements
         stream.write(new HtmlTableCell(estimationSpec.getNumericalProcessingSpec().getMethod().toString(), VAL_SIZE, HtmlStyle.Left));
         stream.close(HtmlTag.TABLEROW);
         
+        stream.open(HtmlTag.TABLEROW);
+        stream.write(new HtmlTableCell("Filter", COL_SIZE, HtmlStyle.Left));
+        stream.write(new HtmlTableCell(estimationSpec.getNumericalProcessingSpec().getFilterEngine().toString(), VAL_SIZE, HtmlStyle.Left));
+        stream.close(HtmlTag.TABLEROW);
+        
         stream.open(HtmlTag.TABLEROW);
         stream.write(new HtmlTableCell("Precision", COL_SIZE, HtmlStyle.Left));
         stream.write(new HtmlTableCell(String.valueOf(estimationSpec.getNumericalProcessingSpec().getPrecision()), VAL_SIZE, HtmlStyle.Left));
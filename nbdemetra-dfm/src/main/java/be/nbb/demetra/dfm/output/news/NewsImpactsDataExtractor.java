@@ -25,12 +25,14 @@ import ec.tss.dfm.DfmResults;
 import ec.tss.dfm.DfmSeriesDescriptor;
 import ec.tstoolkit.data.DataBlock;
 import ec.tstoolkit.dfm.DfmNews;
+import ec.tstoolkit.maths.matrices.Matrix;
 import ec.tstoolkit.timeseries.information.TsInformationSet;
 import ec.tstoolkit.timeseries.information.TsInformationUpdates;
 import ec.tstoolkit.timeseries.simplets.TsData;
 import ec.tstoolkit.timeseries.simplets.TsFrequency;
 import ec.tstoolkit.timeseries.simplets.TsPeriod;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -104,6 +106,22 @@ public final class NewsImpactsDataExtractor {
             revsStart = doc.getRevisionsDomain().getStart();
         }
 
+        // weights of all the targets (in the order of the loop below)
+        List<TsPeriod> targets = new ArrayList<>();
+        for (int j = sNew.getLength() - 1; j >= 0 && sNew.isMissing(j); --j) {
+            TsPeriod pN = sNew.getDomain().get(j).lastPeriod(freq);
+            if (pN.isNotBefore(doc.getNewsDomain().getStart())) {
+                targets.add(pN);
+            }
+        }
+        int[] tseries = new int[targets.size()];
+        Arrays.fill(tseries, selected);
+        TsPeriod[] tperiods = targets.toArray(new TsPeriod[targets.size()]);
+        Matrix newsWeights = targets.isEmpty() ? null : doc.weights(tseries, tperiods);
+        Matrix revisionsWeights = targets.isEmpty() || doc.newsDetails().revisions().isEmpty() ? null
+                : doc.weightsRevisions(tseries, tperiods);
+        int target = 0;
+
         for (int j = sNew.getLength() - 1; j >= 0; --j) {
             if (sNew.isMissing(j)) {
                 TsPeriod p = sNew.getDomain().get(j);
@@ -111,7 +129,7 @@ public final class NewsImpactsDataExtractor {
                 if (pN.isNotBefore(doc.getNewsDomain().getStart())) {
                     newPeriods.add(p);
 
-                    DataBlock news_weights = doc.weights(selected, pN); // Get weights
+                    DataBlock news_weights = newsWeights.row(target); // Get weights
                     all_news.add(n.dot(news_weights) * stdev);
                     all_news2.put(p, n.dot(news_weights) * stdev);
 
@@ -125,7 +143,7 @@ public final class NewsImpactsDataExtractor {
                     }
 
                     if (!doc.newsDetails().revisions().isEmpty()) {
-                        DataBlock revisions_weights = doc.weightsRevisions(selected, pN); // Get weights
+                        DataBlock revisions_weights = revisionsWeights.row(target); // Get weights
                         all_revisions.add(r.dot(revisions_weights) * stdev);
                         all_revisions2.put(p, r.dot(revisions_weights) * stdev);
 
@@ -134,6 +152,7 @@ public final class NewsImpactsDataExtractor {
                             revisions_impacts.get(revisions_impacts.size() - 1).set(k, r.get(k) * revisions_weights.get(k) * stdev);
                         }
                     }
+                    ++target;
                 }
             } else {
                 break;
@@ -36,6 +36,7 @@ import ec.tss.dfm.DfmSeriesDescriptor;
 import ec.tss.tsproviders.utils.Formatters;
 import ec.tstoolkit.data.DataBlock;
 import ec.tstoolkit.dfm.DfmNews;
+import ec.tstoolkit.maths.matrices.Matrix;
 import ec.tstoolkit.timeseries.TsAggregationType;
 import ec.tstoolkit.timeseries.information.TsInformationSet;
 import ec.tstoolkit.timeseries.information.TsInformationUpdates;
@@ -479,6 +480,22 @@ public class NewsWeightsView extends JPanel {
             revsStart = doc.getRevisionsDomain().getStart();
         }
 
+        // weights of all the targets (in the order of the loop below)
+        List<TsPeriod> targets = new ArrayList<>();
+        for (int j = sNew.getLength() - 1; j >= 0 && sNew.isMissing(j); --j) {
+            TsPeriod pN = sNew.getDomain().get(j).lastPeriod(freq);
+            if (pN.isNotBefore(doc.getNewsDomain().getStart())) {
+                targets.add(pN);
+            }
+        }
+        int[] tseries = new int[targets.size()];
+        Arrays.fill(tseries, selected);
+        TsPeriod[] tperiods = targets.toArray(new TsPeriod[targets.size()]);
+        Matrix newsWeights = targets.isEmpty() ? null : doc.weights(tseries, tperiods);
+        Matrix revisionsWeights = targets.isEmpty() || doc.newsDetails().revisions().isEmpty() ? null
+                : doc.weightsRevisions(tseries, tperiods);
+        int target = 0;
+
         for (int j = sNew.getLength() - 1; j >= 0; --j) {
             if (sNew.isMissing(j)) {
                 TsPeriod p = sNew.getDomain().get(j);
@@ -486,7 +503,7 @@ public class NewsWeightsView extends JPanel {
                 if (pN.isNotBefore(doc.getNewsDomain().getStart())) {
                     newPeriods.add(p);
 
-                    DataBlock news_weights = doc.weights(selected, pN); // Get weights
+                    DataBlock news_weights = newsWeights.row(target); // Get weights
                     all_news.add(n.dot(news_weights) * stdev);
 
                     double newValue = (doc.getNewForecast(selected, pN) * stdev) + mean;
@@ -496,11 +513,12 @@ public class NewsWeightsView extends JPanel {
                     all_news_weights.add(news_weights);
 
                     if (!doc.newsDetails().revisions().isEmpty()) {
-                        DataBlock revisions_weights = doc.weightsRevisions(selected, pN);
+                        DataBlock revisions_weights = revisionsWeights.row(target);
                         all_revisions.add(r.dot(revisions_weights) * stdev);
 
                         all_revisions_weights.add(revisions_weights);
                     }
+                    ++target;
                 }
             } else {
                 break;